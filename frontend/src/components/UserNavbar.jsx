@@ -1,6 +1,9 @@
+import { useEffect, useState } from 'react';
 import { useNavigate } from 'react-router-dom';
+import { getUnreadNotificationCount } from '../services/RideService';
 
 const NAV_HEIGHT = 64;
+const UNREAD_POLL_MS = 30000;
 
 function UserNavbar({
   showTripHistory = true,
@@ -16,6 +19,24 @@ function UserNavbar({
   showAbout = true,
 }) {
   const navigate = useNavigate();
+  const [unreadCount, setUnreadCount] = useState(0);
+
+  // The count comes from a server-side counter, so polling it is cheap
+  useEffect(() => {
+    const userId = JSON.parse(localStorage.getItem('user') || 'null')?.id;
+    if (!showNotifications || !userId) return;
+    let cancelled = false;
+    const refresh = async () => {
+      const count = await getUnreadNotificationCount(userId);
+      if (!cancelled) setUnreadCount(count);
+    };
+    refresh();
+    const timer = setInterval(refresh, UNREAD_POLL_MS);
+    return () => {
+      cancelled = true;
+      clearInterval(timer);
+    };
+  }, [showNotifications]);
 
   return (
     <>
@@ -33,7 +54,7 @@ function UserNavbar({
             {showReviews && <button className="navbar-link" onClick={() => navigate('/reviews')}>Reviews</button>}
             {showEmergency && <button className="navbar-link" onClick={() => navigate('/emergency')}>Emergency</button>}
             {showSettings && <button className="navbar-link" onClick={() => navigate('/settings')}>Settings</button>}
-            {showNotifications && <button className="navbar-link" onClick={() => navigate('/notifications')}>Notifications</button>}
+            {showNotifications && <button className="navbar-link" onClick={() => navigate('/notifications')}>Notifications{unreadCount > 0 && <span className="unread-badge">{unreadCount > 99 ? '99+' : unreadCount}</span>}</button>}
             {showContact && <button className="navbar-link" onClick={() => navigate('/contact')}>Contact</button>}
             {showHelp && <button className="navbar-link" onClick={() => navigate('/help')}>Help</button>}
             {showAbout && <button className="navbar-link" onClick={() => navigate('/about')}>About</button>}
@@ -53,6 +74,15 @@ function UserNavbar({
             transition: background 0.2s, color 0.2s;
             white-space: nowrap;
           }
+          .user-navbar .unread-badge {
+            margin-left: 6px;
+            background: #d63031;
+            color: #fff;
+            border-radius: 10px;
+            padding: 1px 7px;
+            font-size: 12px;
+            font-weight: 700;
+          }
           .user-navbar .navbar-link:hover, .user-navbar .navbar-link:focus {
             background: #e0eafc;
           }
@@ -4,6 +4,7 @@ import DriverNavbar from '../../components/DriverNavbar';
 import Card from '../../components/ui/Card';
 import Badge from '../../components/ui/Badge';
 import Toast from '../../components/Toast';
+import WebSocketService from '../../services/WebSocketService';
 import { getPendingRidesLocal, removePendingRideLocal, updateRecentStatusLocal, getRecentByIdLocal, acceptRideApi, getRideRequestsByStatusFromDatabase } from '../../services/RideService';
 
 const API = (import.meta.env?.VITE_API_URL || 'http://localhost:8081');
@@ -40,41 +41,45 @@ const PresentTimeRides = () => {
     return () => window.removeEventListener('storage', onStorage);
   }, []);
 
-  // Poll backend REQUESTED rides when ONLINE, fallback to local pending
+  // While ONLINE, ride offers are pushed over STOMP (/user/queue/offers) instead of polled
   useEffect(() => {
-    const tick = () => {
-      if (status === 'ONLINE') {
-        getRideRequestsByStatusFromDatabase('REQUESTED')
-          .then((res) => {
-            const rides = Array.isArray(res?.rides) ? res.rides : (Array.isArray(res) ? res : []);
-            if (rides.length > 0) {
-              const mapped = rides.map(r => ({
-                id: r.id,
-                pickup: r.pickupLocation,
-                dropoff: r.dropoffLocation,
-                fare: r.fare || 0,
-                distance: r.distance ? `${r.distance} km` : '—',
-                vehicleType: r.vehicleType || 'car'
-              }));
-              const filtered = mapped.filter(r => !r.vehicleType || r.vehicleType === driverVehicleType);
-              setRecentRequests(filtered);
-              return;
-            }
-            const all = getPendingRidesLocal();
-            const filtered = Array.isArray(all) ? all.filter(r => !r.vehicleType || r.vehicleType === driverVehicleType) : [];
-            setRecentRequests(filtered);
-          })
-          .catch(() => {
-            const all = getPendingRidesLocal();
-            const filtered = Array.isArray(all) ? all.filter(r => !r.vehicleType || r.vehicleType === driverVehicleType) : [];
-            setRecentRequests(filtered);
-          });
-      }
+    if (status !== 'ONLINE' || !user?.id) return;
+
+    fetchRecentRequests();
+
+    // Connecting is async; if the effect is torn down first, the late callback must not subscribe
+    let cancelled = false;
+    let subscription = null;
+    WebSocketService.connect(() => {
+      if (cancelled) return;
+      subscription = WebSocketService.subscribeToDriverOffers((offer) => {
+        const incoming = {
+          id: offer.rideId,
+          pickup: offer.pickupAddress,
+          dropoff: offer.dropoffAddress,
+          fare: offer.fare || 0,
+          distance: offer.distance ? `${offer.distance} km` : '—',
+          vehicleType: offer.vehicleType || 'car',
+          etaMinutes: offer.pickupEtaMinutes,
+          expiresAt: offer.expiresAt
+        };
+        // A repeated offer for the same ride replaces the old card
+        setRecentRequests(prev => [incoming, ...prev.filter(x => x.id !== incoming.id)]);
+      });
+    });
+
+    // Drop offers whose window has passed; purely local, no network
+    const prune = setInterval(() => {
+      const now = Date.now();
+      setRecentRequests(prev => prev.filter(x => !x.expiresAt || x.expiresAt > now));
+    }, 5000);
+
+    return () => {
+      cancelled = true;
+      if (subscription) subscription.unsubscribe();
+      clearInterval(prune);
     };
-    tick();
-    const id = setInterval(tick, 2000);
-    return () => clearInterval(id);
-  }, [status]);
+  }, [status, user?.id]);
 
   const fetchRecentRequests = async () => {
     setLoading(true);
@@ -111,7 +116,7 @@ const PresentTimeRides = () => {
       await acceptRideApi(req.id);
       updateRecentStatusLocal(req.id, 'accepted');
       removePendingRideLocal(req.id);
-      setRecentRequests(getPendingRidesLocal());
+      setRecentRequests(prev => prev.filter(r => r.id !== req.id));
       setToast({ message: `Accepted ride #${req.id} - Starting tracking!`, type: 'success' });
       
       // Immediately start tracking the accepted ride
@@ -126,13 +131,13 @@ const PresentTimeRides = () => {
       setToast({ message: errorMessage, type: 'error' });
       // Remove the ride from pending list if it's no longer available
       removePendingRideLocal(req.id);
-      setRecentRequests(getPendingRidesLocal());
+      setRecentRequests(prev => prev.filter(r => r.id !== req.id));
     }
   };
 
   const handleDeclinePending = (req) => {
     removePendingRideLocal(req.id);
-    setRecentRequests(getPendingRidesLocal());
+    setRecentRequests(prev => prev.filter(r => r.id !== req.id));
     setToast({ message: `Declined ride #${req.id}`, type: 'info' });
   };
 
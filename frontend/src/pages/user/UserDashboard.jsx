@@ -1,7 +1,7 @@
 import React, { useEffect, useRef, useState } from 'react';
 import { useNavigate, useLocation } from 'react-router-dom';
 import UserNavbar from '../../components/UserNavbar';
-import { requestRide, estimateFare, getNearbyDrivers, addPendingRideLocal } from '../../services/RideService';
+import { requestRide, getFareQuotes, getNearbyDrivers, addPendingRideLocal } from '../../services/RideService';
 import Toast from '../../components/Toast';
 
 const UserDashboard = () => {
@@ -261,18 +261,19 @@ const UserDashboard = () => {
     setLoadingEstimate(true);
     try {
       const rt = rideTypes.find(r => r.id === rideType);
-      // Try API estimate first when coords are available
+      // One quotes call prices every vehicle type; use the server fare for this one when it has it
       if (pickupCoords && dropoffCoords) {
-        const apiEst = await estimateFare({
-          pickup: { lat: pickupCoords.lat, lng: pickupCoords.lng, address: pickupAddress },
-          drop: { lat: dropoffCoords.lat, lng: dropoffCoords.lng, address: dropoffAddress },
-          vehicleType: rideType,
+        const quotes = await getFareQuotes({
+          pickup: pickupCoords,
+          drop: dropoffCoords,
+          distance: haversineKm(pickupCoords, dropoffCoords),
         });
-        if (apiEst && typeof apiEst.price === 'number') {
+        const quote = quotes.find(q => q?.vehicleType?.toLowerCase() === rideType);
+        if (quote && typeof quote.fare === 'number') {
           setEstimate({
-            distance: Number((apiEst.distanceKm || 0).toFixed?.(1) ?? apiEst.distanceKm ?? 0),
-            duration: apiEst.durationMin ?? 0,
-            total: Math.round(apiEst.price),
+            distance: Number((quote.distanceKm || 0).toFixed(1)),
+            duration: quote.durationMinutes ?? 0,
+            total: Math.round(quote.fare),
             ride: rt.name,
           });
           return;
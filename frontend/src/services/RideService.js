@@ -332,20 +332,20 @@ export const requestRide = async ({ pickup, drop, vehicleType, paymentMethod, pr
   }
 };
 
-export const estimateFare = async ({ pickup, drop, vehicleType, distance }) => {
+// One call prices every vehicle type for the trip: [{ vehicleType, fare, durationMinutes, ... }]
+export const getFareQuotes = async ({ pickup, drop, distance }) => {
   try {
-    // Distance from frontend map or auto-calc
-    // Send to backend
-    const res = await api.post('/rides/estimate-fare', {
-      vehicleType,
-      distance: distance || 5.0, // fallback distance if map not ready
-      pickup,
-      drop
+    const res = await api.post('/rides/quotes', {
+      distance,
+      pickupLatitude: pickup?.lat,
+      pickupLongitude: pickup?.lng,
+      dropoffLatitude: drop?.lat,
+      dropoffLongitude: drop?.lng
     });
-    return res?.data?.data?.fare ? Math.round(res.data.data.fare) : null;
+    return res?.data?.data || [];
   } catch (e) {
-    console.warn('Fare estimation failed:', e);
-    return null;
+    console.warn('Fare quotes failed:', e);
+    return [];
   }
 };
 
@@ -583,6 +583,17 @@ export const getUserNotifications = async (userId) => {
   }
 };
 
+// Badge count; served from a server-side counter, safe to poll
+export const getUnreadNotificationCount = async (userId) => {
+  try {
+    const res = await api.get(`/users/${userId}/notifications/unread-count`);
+    return res?.data?.count ?? 0;
+  } catch (e) {
+    console.error('Failed to get unread notification count:', e);
+    return 0;
+  }
+};
+
 export const markNotificationAsRead = async (userId, notificationId) => {
   try {
     const res = await api.post(`/users/${userId}/notifications/${notificationId}/mark-read`);
@@ -14,9 +14,12 @@ class WebSocketService {
 
         const API = import.meta.env?.VITE_API_URL || 'http://localhost:8081';
         const socket = new SockJS(`${API}/ws-ride`);
+        // The JWT authenticates the STOMP session, which is what private /user/queue/... destinations are routed by
+        const token = JSON.parse(localStorage.getItem('user') || '{}')?.token;
         
         this.client = new Client({
             webSocketFactory: () => socket,
+            connectHeaders: token ? { Authorization: `Bearer ${token}` } : {},
             reconnectDelay: 5000,
             heartbeatIncoming: 4000,
             heartbeatOutgoing: 4000,
@@ -52,6 +55,21 @@ class WebSocketService {
         }
     }
 
+    // Offers go to the authenticated driver's own session, so no id is part of the destination
+    subscribeToDriverOffers(callback) {
+        if (this.client && this.client.connected) {
+            console.log('STOMP: Subscribing to /user/queue/offers');
+            return this.client.subscribe('/user/queue/offers', (message) => {
+                if (message.body) {
+                    callback(JSON.parse(message.body));
+                }
+            });
+        } else {
+            console.warn('STOMP: Cannot subscribe, client not connected');
+            return null;
+        }
+    }
+
     disconnect() {
         if (this.client) {
             this.client.deactivate();
@@ -0,0 +1,76 @@
+package com.takeme.config;
+
+import com.takeme.model.DriverEarningsBucket;
+import com.takeme.model.Ride;
+import com.takeme.model.WalletLedgerEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compound indexes backing the keyset-paginated and range queries. Creating an index that already exists
+ * is a no-op, so this is safe on every start.
+ */
+@Component
+public class MongoIndexConfig {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        IndexOperations rides = mongoTemplate.indexOps(Ride.class);
+
+        // Ride history pages: equality on the owner, then (createdAt, _id) descending
+        rides.createIndex(new Index()
+                .on("riderId", Sort.Direction.ASC)
+                .on("createdAt", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.DESC)
+                .named("rider_history"));
+        rides.createIndex(new Index()
+                .on("driverId", Sort.Direction.ASC)
+                .on("createdAt", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.DESC)
+                .named("driver_history"));
+
+        // Earnings history: a driver's completed rides, newest completion first
+        rides.createIndex(new Index()
+                .on("driverId", Sort.Direction.ASC)
+                .on("status", Sort.Direction.ASC)
+                .on("completedAt", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.DESC)
+                .named("driver_earnings_history"));
+
+        // Dispatch tick: open rides, oldest request first
+        rides.createIndex(new Index()
+                .on("status", Sort.Direction.ASC)
+                .on("createdAt", Sort.Direction.ASC)
+                .on("_id", Sort.Direction.ASC)
+                .named("status_created_at"));
+
+        // Revenue report: completed rides over a completedAt range
+        rides.createIndex(new Index()
+                .on("status", Sort.Direction.ASC)
+                .on("completedAt", Sort.Direction.ASC)
+                .named("status_completed_at"));
+
+        // Dashboard reads a driver's daily buckets over a date range
+        mongoTemplate.indexOps(DriverEarningsBucket.class).createIndex(new Index()
+                .on("driverId", Sort.Direction.ASC)
+                .on("day", Sort.Direction.DESC)
+                .named("driver_day"));
+
+        // One ledger entry per account and seq; also the order a balance is replayed in
+        mongoTemplate.indexOps(WalletLedgerEntry.class).createIndex(new Index()
+                .on("accountType", Sort.Direction.ASC)
+                .on("accountId", Sort.Direction.ASC)
+                .on("seq", Sort.Direction.ASC)
+                .unique()
+                .named("account_seq"));
+    }
+}
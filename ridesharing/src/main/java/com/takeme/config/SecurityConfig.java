@@ -39,6 +39,8 @@ public class SecurityConfig {
                 .requestMatchers("/api/drivers/login", "/api/drivers/register").permitAll()
                 .requestMatchers("/api/profile/vehicle-types").permitAll()
                 .requestMatchers("/api/**").authenticated()
+                .requestMatchers("/actuator/health", "/actuator/info").permitAll()
+                .requestMatchers("/actuator/**").authenticated()
                 .anyRequest().permitAll()
             )
             .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
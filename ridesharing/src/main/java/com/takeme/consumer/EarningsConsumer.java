@@ -6,11 +6,20 @@ import com.takeme.model.Driver;
 import com.takeme.model.Rider;
 import com.takeme.repository.DriverRepository;
 import com.takeme.repository.RiderRepository;
+import com.takeme.service.DriverEarningsRollupService;
+import com.takeme.service.DriverLeaderboard;
+import com.takeme.service.DriverLocationService;
+import com.takeme.service.PlatformMetricsRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 @Service
@@ -22,6 +31,21 @@ public class EarningsConsumer {
     
     @Autowired
     private RiderRepository riderRepository;
+    
+    @Autowired
+    private DriverLocationService driverLocationService;
+    
+    @Autowired
+    private DriverEarningsRollupService earningsRollupService;
+    
+    @Autowired
+    private PlatformMetricsRegistry platformMetrics;
+    
+    @Autowired
+    private DriverLeaderboard driverLeaderboard;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
 
     @KafkaListener(topics = KafkaConfig.RIDE_COMPLETED_TOPIC, groupId = "earnings-group")
     public void consumeEarningsEvent(RideCompletedEvent event) {
@@ -30,9 +54,11 @@ public class EarningsConsumer {
         // 1. Update Rider Experience Stats
         Optional<Rider> riderOpt = riderRepository.findById(event.getRiderId());
         if (riderOpt.isPresent()) {
-            Rider rider = riderOpt.get();
-            rider.setTotalRides(rider.getTotalRides() + 1);
-            riderRepository.save(rider);
+            mongoTemplate.updateFirst(
+                new Query(Criteria.where("id").is(riderOpt.get().getId())),
+                new Update().inc("totalRides", 1).set("updatedAt", LocalDateTime.now()),
+                Rider.class
+            );
         }
         
         // 2. Process Driver Gross Earnings Ledger
@@ -46,9 +72,21 @@ public class EarningsConsumer {
                 driver.setTotalEarnings(driver.getTotalEarnings() + event.getAmount());
                 
                 // Make the driver available again to accept new pings
+                Driver.DriverStatus previousStatus = driver.getStatus();
                 driver.setStatus(Driver.DriverStatus.AVAILABLE);
-                driverRepository.save(driver);
+                mongoTemplate.updateFirst(
+                    new Query(Criteria.where("id").is(driver.getId())),
+                    new Update().inc("totalRides", 1).inc("totalEarnings", event.getAmount())
+                        .set("status", Driver.DriverStatus.AVAILABLE),
+                    Driver.class
+                );
+                driverLocationService.syncDriver(driver);
+                platformMetrics.driverStatusChanged(previousStatus, Driver.DriverStatus.AVAILABLE);
+                driverLeaderboard.update(driver);
             }
+            
+            // 3. Daily earnings buckets; a redelivered event is ignored
+            earningsRollupService.recordCompletedRide(event.getRideId());
         }
     }
 }
@@ -1,15 +1,23 @@
 package com.takeme.controller;
 
 import com.takeme.dto.ApiResponse;
+import com.takeme.dto.CursorPage;
+import com.takeme.dto.LeaderboardEntryDto;
 import com.takeme.model.Driver;
 import com.takeme.model.Rider;
 import com.takeme.model.Ride;
 import com.takeme.service.AdminService;
+import com.takeme.service.DriverEarningsRollupService;
+import com.takeme.service.NotificationRetentionService;
+import com.takeme.service.PricingEngine;
+import com.takeme.service.WalletSnapshotService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -21,6 +29,18 @@ public class AdminController {
     @Autowired
     private AdminService adminService;
     
+    @Autowired
+    private PricingEngine pricingEngine;
+    
+    @Autowired
+    private DriverEarningsRollupService earningsRollupService;
+    
+    @Autowired
+    private NotificationRetentionService notificationRetentionService;
+    
+    @Autowired
+    private WalletSnapshotService walletSnapshotService;
+    
     @GetMapping("/dashboard/stats")
     public ResponseEntity<?> getDashboardStats() {
         try {
@@ -98,10 +118,14 @@ public class AdminController {
         }
     }
     
+    // Optional date range (inclusive, yyyy-MM-dd) and bucket = day | week | month
     @GetMapping("/revenue/report")
-    public ResponseEntity<?> getRevenueReport() {
+    public ResponseEntity<?> getRevenueReport(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "day") String bucket) {
         try {
-            Map<String, Object> report = adminService.getRevenueReport();
+            Map<String, Object> report = adminService.getRevenueReport(from, to, bucket);
             return ResponseEntity.ok(report);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -109,6 +133,70 @@ public class AdminController {
         }
     }
     
+    // Re-reads the rate card; the old card stays live if the new one is invalid
+    @PostMapping("/pricing/reload")
+    public ResponseEntity<?> reloadRateCard() {
+        try {
+            long version = pricingEngine.reload();
+            return ResponseEntity.ok(ApiResponse.success("Rate card reloaded", Map.of("rateCardVersion", version)));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    // Recomputes earnings buckets from raw rides and repairs any that drifted (one driver, or everyone)
+    @PostMapping("/earnings/rebuild")
+    public ResponseEntity<?> rebuildEarnings(@RequestParam(required = false) Long driverId) {
+        try {
+            Map<String, Object> result = driverId != null
+                ? Map.of("driversChecked", 1, "bucketsRepaired", earningsRollupService.rebuildDriver(driverId))
+                : earningsRollupService.rebuildAll();
+            return ResponseEntity.ok(ApiResponse.success("Earnings rebuilt", result));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/notifications/archive")
+    public ResponseEntity<?> archiveNotifications() {
+        try {
+            Map<String, Object> result = notificationRetentionService.archiveExpired();
+            return ResponseEntity.ok(ApiResponse.success("Notifications archived", result));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/wallet/verify")
+    public ResponseEntity<?> verifyWallets() {
+        try {
+            Map<String, Object> result = walletSnapshotService.snapshotAndVerify();
+            return ResponseEntity.ok(ApiResponse.success("Wallet ledger verified", result));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    // Ranked by rating; filter by vehicle type and minimum rides, follow nextCursor for more
+    @GetMapping("/drivers/leaderboard")
+    public ResponseEntity<?> getDriverLeaderboard(
+            @RequestParam(required = false) String vehicleType,
+            @RequestParam(defaultValue = "0") int minRides,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            CursorPage<LeaderboardEntryDto> page = adminService.getDriverLeaderboard(vehicleType, minRides, cursor, limit);
+            return ResponseEntity.ok(ApiResponse.success(page));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
     @GetMapping("/drivers/top")
     public ResponseEntity<?> getTopDrivers() {
         try {
@@ -1,12 +1,16 @@
 package com.takeme.controller;
 
 import com.takeme.dto.ApiResponse;
-
+import com.takeme.dto.CursorPage;
+import com.takeme.dto.EarningsRecordDto;
 import com.takeme.service.DriverEarningsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
@@ -41,5 +45,28 @@ public class DriverEarningsController {
         }
     }
     
-
+    // Keyset-paged earnings history, newest completion first; follow nextCursor until hasMore is false
+    @GetMapping("/{driverId}/earnings/history/page")
+    public ResponseEntity<?> getEarningsHistoryPage(
+            @PathVariable Long driverId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            CursorPage<EarningsRecordDto> page = earningsService.getEarningsHistoryPage(driverId, cursor, limit);
+            return ResponseEntity.ok(ApiResponse.success(page));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    // Full history as NDJSON for exports; rows are written as they come off the cursor
+    @GetMapping("/{driverId}/earnings/history/export")
+    public ResponseEntity<StreamingResponseBody> exportEarningsHistory(@PathVariable Long driverId) {
+        StreamingResponseBody body = out -> earningsService.streamEarningsHistory(driverId, out);
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/x-ndjson"))
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"earnings-" + driverId + ".ndjson\"")
+            .body(body);
+    }
 }
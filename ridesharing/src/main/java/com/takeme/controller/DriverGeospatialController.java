@@ -1,12 +1,17 @@
 package com.takeme.controller;
 
 import com.takeme.dto.NearbyDriverDto;
+import com.takeme.dto.NearbyDriverSearchDto;
+import com.takeme.model.VehicleType;
 import com.takeme.service.DriverLocationService;
+import com.takeme.service.EtaService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/drivers")
@@ -16,13 +21,36 @@ public class DriverGeospatialController {
     @Autowired
     private DriverLocationService driverLocationService;
 
+    @Autowired
+    private EtaService etaService;
+
     @GetMapping("/nearby")
     public ResponseEntity<List<NearbyDriverDto>> getNearbyDrivers(
             @RequestParam double lat,
             @RequestParam double lng,
-            @RequestParam(defaultValue = "5.0") double radius) {
-            
-        List<NearbyDriverDto> nearbyDrivers = driverLocationService.getNearbyDrivers(lat, lng, radius);
+            @RequestParam(defaultValue = "5.0") double radius,
+            @RequestParam(required = false) List<String> vehicleType,
+            @RequestParam(defaultValue = "false") boolean adaptive,
+            @RequestParam(defaultValue = "10") int k) {
+
+        // e.g. ?vehicleType=SUV&vehicleType=Van; unknown labels are ignored
+        List<VehicleType> vehicleTypes = vehicleType == null ? List.of() : vehicleType.stream()
+                .map(VehicleType::fromLabel)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+
+        if (adaptive) {
+            // Radius grows until k drivers are found; the radius it settled on goes back as a header
+            NearbyDriverSearchDto result = driverLocationService.searchNearbyDriversAdaptive(lat, lng, k, vehicleTypes);
+            etaService.annotate(result.getDrivers(), lat, lng);
+            return ResponseEntity.ok()
+                    .header("X-Search-Radius-Km", String.valueOf(result.getRadiusKm()))
+                    .body(result.getDrivers());
+        }
+
+        List<NearbyDriverDto> nearbyDrivers = driverLocationService.getNearbyDrivers(lat, lng, radius, vehicleTypes);
+        etaService.annotate(nearbyDrivers, lat, lng);
         return ResponseEntity.ok(nearbyDrivers);
     }
 }
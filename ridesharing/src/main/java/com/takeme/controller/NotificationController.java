@@ -1,6 +1,7 @@
 package com.takeme.controller;
 
 import com.takeme.dto.ApiResponse;
+import com.takeme.dto.CursorPage;
 import com.takeme.model.Notification;
 import com.takeme.service.NotificationService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,6 +36,21 @@ public class NotificationController {
         }
     }
     
+    // Keyset-paged inbox, newest first; follow nextCursor until hasMore is false
+    @GetMapping("/{userId}/notifications/page")
+    public ResponseEntity<?> getUserNotificationsPage(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            CursorPage<Notification> page = notificationService.getUserNotificationsPage(userId, cursor, limit);
+            return ResponseEntity.ok(ApiResponse.success(page));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
     @GetMapping("/{userId}/notifications/unread")
     public ResponseEntity<?> getUnreadNotifications(@PathVariable Long userId) {
         try {
@@ -52,6 +68,17 @@ public class NotificationController {
         }
     }
     
+    // Cheap enough to poll for a badge; does not touch the notifications table
+    @GetMapping("/{userId}/notifications/unread-count")
+    public ResponseEntity<?> getUnreadCount(@PathVariable Long userId) {
+        try {
+            return ResponseEntity.ok(Map.of("count", notificationService.getUnreadCount(userId)));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
     @PostMapping("/{userId}/notifications/{notificationId}/mark-read")
     public ResponseEntity<?> markNotificationAsRead(
             @PathVariable Long userId,
@@ -68,8 +95,8 @@ public class NotificationController {
     @PostMapping("/{userId}/notifications/mark-all-read")
     public ResponseEntity<?> markAllNotificationsAsRead(@PathVariable Long userId) {
         try {
-            notificationService.markAllAsRead(userId);
-            return ResponseEntity.ok(ApiResponse.success("All notifications marked as read", null));
+            int updated = notificationService.markAllAsRead(userId);
+            return ResponseEntity.ok(ApiResponse.success("All notifications marked as read", Map.of("updated", updated)));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                 .body(ApiResponse.error(e.getMessage()));
@@ -11,6 +11,7 @@ import com.takeme.model.Ride;
 import com.takeme.model.Transaction;
 import com.takeme.repository.RideRepository;
 import com.takeme.repository.TransactionRepository;
+import com.takeme.service.PlatformMetricsRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
@@ -36,6 +37,9 @@ public class PaymentController {
     @Autowired
     private TransactionRepository transactionRepository;
 
+    @Autowired
+    private PlatformMetricsRegistry platformMetrics;
+
     @PostMapping("/create-intent")
     public ResponseEntity<?> createPaymentIntent(@RequestBody PaymentIntentDto request) {
         try {
@@ -72,6 +76,7 @@ public class PaymentController {
             transaction.setCreatedAt(LocalDateTime.now());
             
             transactionRepository.save(transaction);
+            platformMetrics.transactionRecorded();
 
             Map<String, String> response = new HashMap<>();
             response.put("clientSecret", intent.getClientSecret());
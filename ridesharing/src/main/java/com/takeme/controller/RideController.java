@@ -1,7 +1,9 @@
 package com.takeme.controller;
 
 import com.takeme.dto.*;
+import com.takeme.exception.RideAlreadyTakenException;
 import com.takeme.model.Ride;
+import com.takeme.service.FareQuoteService;
 import com.takeme.service.RideService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +22,9 @@ public class RideController {
     
     @Autowired
     private RideService rideService;
+
+    @Autowired
+    private FareQuoteService fareQuoteService;
     
     @PostMapping
     public ResponseEntity<?> createRide(@Valid @RequestBody RideRequest request) {
@@ -92,6 +97,35 @@ public class RideController {
         }
     }
     
+    // Keyset-paged history, newest first; follow nextCursor until hasMore is false
+    @GetMapping("/rider/{riderId}/page")
+    public ResponseEntity<?> getRiderRidesPage(
+            @PathVariable Long riderId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            CursorPage<RideResponse> page = rideService.getRiderRidesPage(riderId, cursor, limit);
+            return ResponseEntity.ok(ApiResponse.success(page));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    @GetMapping("/driver/{driverId}/page")
+    public ResponseEntity<?> getDriverRidesPage(
+            @PathVariable Long driverId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            CursorPage<RideResponse> page = rideService.getDriverRidesPage(driverId, cursor, limit);
+            return ResponseEntity.ok(ApiResponse.success(page));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
     @GetMapping("/driver/{driverId}")
     public ResponseEntity<?> getDriverRides(@PathVariable Long driverId) {
         try {
@@ -150,6 +184,9 @@ public class RideController {
             RideResponse response = rideService.convertToResponse(ride);
             
             return ResponseEntity.ok(ApiResponse.success("Ride accepted successfully", response));
+        } catch (RideAlreadyTakenException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ApiResponse.error(e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                 .body(ApiResponse.error(e.getMessage()));
@@ -236,53 +273,18 @@ public class RideController {
         }
     }
     @PostMapping("/estimate-fare")
-    public ResponseEntity<?> estimateFare(@RequestBody Map<String, Object> payload) {
+    public ResponseEntity<?> estimateFare(@RequestBody FareEstimateRequest request) {
         try {
-            String vehicleType = (String) payload.getOrDefault("vehicleType", "Sedan");
-            Double distance = null;
-            
-            // Try explicit distance first
-            if (payload.containsKey("distance")) {
-                distance = Double.valueOf(payload.get("distance").toString());
-            }
-            
-            // If no distance but lat/lng provided, calculate it? 
-            // For now, let's look for backend calculation service support 
-            // or just rely on passed distance since frontend Google Maps often provides it.
-            // But requirement said "accodingly with database", so let's check RideService methods.
-            // RideService has calculateFare(distance, type).
-            
-            if (distance == null) {
-                // Fallback or error
-                 return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(ApiResponse.error("Distance is required for fare estimation"));
-            }
-
-            // Accessing private method via public wrapper/refactor would be best, 
-            // but for now I can duplicate logic or assume RideService exposes it.
-            // Actually, I should add `calculateFare` to RideService public interface first?
-            // Let's modify RideService to make `calculateFare` public static or public.
-            // Current Plan: Just do simple logic here matching RideService for speed, 
-            // or better: refactor RideService. I'll stick to a simple consistent logic here.
-            
-            double baseFare = 40;
-            double perKm = 15;
-        
-            if ("Bike".equalsIgnoreCase(vehicleType)) {
-                baseFare = 20; perKm = 10;
-            } else if ("SUV".equalsIgnoreCase(vehicleType)) {
-                baseFare = 60; perKm = 20;
-            } else if ("Van".equalsIgnoreCase(vehicleType)) {
-                baseFare = 80; perKm = 25;
-            } else if ("Auto".equalsIgnoreCase(vehicleType)) {
-                baseFare = 25; perKm = 12;
-            }
-        
-            double estimatedFare = baseFare + (distance * perKm);
+            FareQuoteDto quote = fareQuoteService.quote(request);
             
             Map<String, Object> result = new HashMap<>();
-            result.put("fare", estimatedFare);
-            result.put("currency", "INR");
+            result.put("fare", quote.getFare());
+            result.put("currency", quote.getCurrency());
+            result.put("surgeMultiplier", quote.getSurgeMultiplier());
+            result.put("rateCardVersion", quote.getRateCardVersion());
+            if (quote.getDurationMinutes() != null) {
+                result.put("estimatedDuration", quote.getDurationMinutes()); // minutes
+            }
             
             return ResponseEntity.ok(ApiResponse.success(result));
         } catch (Exception e) {
@@ -290,4 +292,28 @@ public class RideController {
                 .body(ApiResponse.error(e.getMessage()));
         }
     }
+    
+    // Many trips in one call, e.g. while the rider drags a pin; unpriceable entries come back as null
+    @PostMapping("/estimate-fare/batch")
+    public ResponseEntity<?> estimateFareBatch(@RequestBody List<FareEstimateRequest> requests) {
+        try {
+            List<FareQuoteDto> quotes = fareQuoteService.quoteBatch(requests);
+            return ResponseEntity.ok(ApiResponse.success(quotes));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+    
+    // Every vehicle type priced for one trip
+    @PostMapping("/quotes")
+    public ResponseEntity<?> getQuotes(@RequestBody FareEstimateRequest request) {
+        try {
+            List<FareQuoteDto> quotes = fareQuoteService.quoteAllVehicles(request);
+            return ResponseEntity.ok(ApiResponse.success(quotes));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error(e.getMessage()));
+        }
+    }
 }
@@ -1,7 +1,7 @@
 package com.takeme.controller;
 
 import com.takeme.dto.LocationPayload;
-import com.takeme.service.DriverLocationService;
+import com.takeme.service.DriverLocationIngestionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
@@ -15,20 +15,16 @@ public class WebSocketLocationController {
     private SimpMessagingTemplate messagingTemplate;
 
     @Autowired
-    private DriverLocationService driverLocationService;
+    private DriverLocationIngestionService locationIngestionService;
 
     @MessageMapping("/driver/location/{rideId}")
     public void receiveAndBroadcastDriverLocation(
             @DestinationVariable Long rideId,
             LocationPayload locationPayload) {
         
-        // Push current location state into the Redis buffer for Geospatial queries
+        // Hand the ping to the coalescing buffer; it reaches Redis on the next batched flush
         if (locationPayload.getDriverId() != null) {
-            driverLocationService.updateDriverLocation(
-                locationPayload.getDriverId(), 
-                locationPayload.getLatitude(), 
-                locationPayload.getLongitude()
-            );
+            locationIngestionService.submit(locationPayload);
         }
 
         // Broadcast the mapped coordinates downstream to the topic subscribers 
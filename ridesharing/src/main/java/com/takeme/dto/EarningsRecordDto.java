@@ -0,0 +1,20 @@
+package com.takeme.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EarningsRecordDto {
+    private Long rideId;
+    private LocalDateTime completedAt;
+    private String pickup;
+    private String dropoff;
+    private Double fare;
+    private Double distance;
+    private Integer rating;
+}
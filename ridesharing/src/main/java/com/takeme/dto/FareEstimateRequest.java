@@ -0,0 +1,25 @@
+package com.takeme.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FareEstimateRequest {
+    private String vehicleType; // Unknown or missing types are priced as Car
+
+    // Either an explicit distance or both coordinate pairs are required
+    private Double distance;
+
+    private Double pickupLatitude;
+    private Double pickupLongitude;
+    private Double dropoffLatitude;
+    private Double dropoffLongitude;
+
+    public boolean hasCoordinates() {
+        return pickupLatitude != null && pickupLongitude != null
+                && dropoffLatitude != null && dropoffLongitude != null;
+    }
+}
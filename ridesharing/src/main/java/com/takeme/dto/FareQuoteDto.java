@@ -0,0 +1,19 @@
+package com.takeme.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FareQuoteDto {
+    private String vehicleType;
+    private double fare;
+    private double distanceKm;
+    private Integer durationMinutes;
+    private double timeBandMultiplier;
+    private double surgeMultiplier;
+    private String currency;
+    private long rateCardVersion;
+}
@@ -0,0 +1,39 @@
+package com.takeme.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * Position in a list sorted by (timestamp desc, id desc). Encoded as an opaque URL-safe string
+ * so clients just echo it back. Rows without a timestamp sort last and carry a null timestamp.
+ */
+public record KeysetCursor(LocalDateTime timestamp, Long id) {
+
+    public String encode() {
+        String millis = timestamp != null ? String.valueOf(timestamp.toInstant(ZoneOffset.UTC).toEpochMilli()) : "";
+        String raw = millis + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Null or blank means "first page".
+     */
+    public static KeysetCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            String millis = raw.substring(0, separator);
+            long id = Long.parseLong(raw.substring(separator + 1));
+            LocalDateTime timestamp = millis.isEmpty()
+                    ? null
+                    : LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(millis)), ZoneOffset.UTC);
+            return new KeysetCursor(timestamp, id);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.takeme.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LeaderboardEntryDto {
+    private Long driverId;
+    private String name;
+    private String vehicleType;
+    private double rating;
+    private int totalRides;
+}
@@ -12,10 +12,9 @@ public class NearbyDriverDto {
     private double latitude;
     private double longitude;
     private double distanceKm;
-    public NearbyDriverDto(long driverId, double latitude, double longitude, double distance) {
-        this.driverId = driverId;
-        this.latitude = latitude;
-        this.longitude = longitude;
-        this.distanceKm = distanceKm;
+    private Double etaMinutes; // Filled in by EtaService where a pickup point is known
+
+    public NearbyDriverDto(Long driverId, double latitude, double longitude, double distanceKm) {
+        this(driverId, latitude, longitude, distanceKm, null);
     }
 }
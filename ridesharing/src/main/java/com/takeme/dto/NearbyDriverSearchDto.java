@@ -0,0 +1,15 @@
+package com.takeme.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NearbyDriverSearchDto {
+    private double radiusKm; // Radius the search settled on
+    private List<NearbyDriverDto> drivers;
+}
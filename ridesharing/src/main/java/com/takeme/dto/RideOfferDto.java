@@ -0,0 +1,23 @@
+package com.takeme.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// What a driver needs to decide on an offer. Deliberately not the RideResponse: no OTP and nothing about the rider
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RideOfferDto {
+    private Long rideId;
+    private Long driverId;
+    private String pickupAddress;
+    private String dropoffAddress;
+    private String vehicleType;
+    private Double fare;
+    private Double distance;
+    private Integer duration;
+    private double pickupDistanceKm;
+    private double pickupEtaMinutes;
+    private long expiresAt; // epoch millis; the driver should ignore the offer after this
+}
@@ -0,0 +1,18 @@
+package com.takeme.exception;
+
+/**
+ * Thrown when a driver tries to accept a ride that another driver has already claimed.
+ */
+public class RideAlreadyTakenException extends RuntimeException {
+
+    private final Long rideId;
+
+    public RideAlreadyTakenException(Long rideId) {
+        super("Ride " + rideId + " has already been taken by another driver");
+        this.rideId = rideId;
+    }
+
+    public Long getRideId() {
+        return rideId;
+    }
+}
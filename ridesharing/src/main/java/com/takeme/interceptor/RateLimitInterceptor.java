@@ -38,7 +38,7 @@ public class RateLimitInterceptor implements HandlerInterceptor {
         // Route evaluation
         if (path.startsWith("/api/auth/")) {
             probe = rateLimitService.tryConsumeLogin(clientId);
-        } else if (path.equals("/api/rides/estimate")) {
+        } else if (path.startsWith("/api/rides/estimate-fare") || path.equals("/api/rides/quotes")) {
             probe = rateLimitService.tryConsumeFareEstimate(clientId);
         } else {
             probe = rateLimitService.tryConsumeGeneral(clientId);
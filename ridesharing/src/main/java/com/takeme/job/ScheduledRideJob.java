@@ -1,8 +1,11 @@
 package com.takeme.job;
 
 import com.takeme.dto.NearbyDriverDto;
+import com.takeme.dto.NearbyDriverSearchDto;
 import com.takeme.model.Ride;
+import com.takeme.model.VehicleType;
 import com.takeme.service.DriverLocationService;
+import com.takeme.service.EtaService;
 import com.takeme.service.RideNotificationService;
 import com.takeme.service.RideService;
 import io.micrometer.tracing.Span;
@@ -18,6 +21,8 @@ import java.util.List;
 @DisallowConcurrentExecution
 public class ScheduledRideJob extends QuartzJobBean {
 
+    private static final int DRIVERS_TO_NOTIFY = 10;
+
     @Autowired
     private RideService rideService;
 
@@ -27,6 +32,9 @@ public class ScheduledRideJob extends QuartzJobBean {
     @Autowired
     private RideNotificationService rideNotificationService;
 
+    @Autowired
+    private EtaService etaService;
+
     @Autowired
     private Tracer tracer;
 
@@ -47,20 +55,24 @@ public class ScheduledRideJob extends QuartzJobBean {
                 return;
             }
 
-            // 1. Query Redis for drivers dynamically positioned within a 5KM ring
-            List<NearbyDriverDto> nearbyDrivers = driverLocationService.getNearbyDrivers(
+            // 1. Query Redis for drivers of the ride's vehicle type, widening the ring until enough are found
+            NearbyDriverSearchDto search = driverLocationService.searchNearbyDriversAdaptive(
                 ride.getPickupLatitude(), 
                 ride.getPickupLongitude(), 
-                5.0 
+                DRIVERS_TO_NOTIFY,
+                List.of(VehicleType.fromLabelOrDefault(ride.getVehicleType()))
             );
+            List<NearbyDriverDto> nearbyDrivers = search.getDrivers();
+            newSpan.tag("search.radius.km", String.valueOf(search.getRadiusKm()));
 
             if (nearbyDrivers.isEmpty()) {
-                System.out.println("No drivers nearby for Scheduled Ride " + rideId + ". You might want to retry this via DLQ or Job Execution constraints iteratively.");
+                System.out.println("No drivers within " + search.getRadiusKm() + " km for Scheduled Ride " + rideId + ". You might want to retry this via DLQ or Job Execution constraints iteratively.");
                 return;
             }
 
             // 2. Transmit STOMP payload bypassing standard REST
-            rideNotificationService.notifyDriversOfNewRide(rideId, nearbyDrivers);
+            etaService.annotate(nearbyDrivers, ride.getPickupLatitude(), ride.getPickupLongitude());
+            rideNotificationService.notifyDriversOfNewRide(rideService.convertToResponse(ride), nearbyDrivers);
             System.out.println("Dispatched Scheduled Ride " + rideId + " mapping to " + nearbyDrivers.size() + " active Redis drivers.");
 
         } catch (Exception e) {
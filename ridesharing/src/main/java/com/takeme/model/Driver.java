@@ -244,12 +244,23 @@ public class Driver {
     private Double currentLongitude;
     private String currentLocation;
     
+    // Only changed by WalletService's $inc; other updates are targeted $sets that never include
+    // them, so a stale copy cannot undo a payment. walletSeq is the sequence of the last ledger entry
     @Column(columnDefinition = "DOUBLE DEFAULT 0.0")
     private Double walletBalance = 0.0;
     
+    private Long walletSeq = 0L;
+    
+    // rating = ratingSum / ratingCount, maintained by DriverRatingService's atomic update. Existing
+    // drivers are only changed with targeted $set/$inc updates, never a whole-document save, so a
+    // stale copy cannot write an old rating back
     @Column(columnDefinition = "DOUBLE DEFAULT 0.0")
     private Double rating = 0.0;
     
+    private Long ratingSum = 0L;
+    
+    private Integer ratingCount = 0;
+    
     @Column(columnDefinition = "INT DEFAULT 0")
     private Integer totalRides = 0;
     
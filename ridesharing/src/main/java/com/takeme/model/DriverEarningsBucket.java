@@ -0,0 +1,36 @@
+package com.takeme.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Running earnings for one driver and one day ("driverId:yyyy-MM-dd"), plus a single lifetime
+ * bucket per driver ("driverId:total", no day). Maintained with $inc as rides complete.
+ */
+@Document(collection = "driver_earnings_buckets")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DriverEarningsBucket {
+
+    @Id
+    private String id;
+
+    private Long driverId;
+
+    private String day; // ISO date, null on the lifetime bucket
+
+    private double gross;
+    private double commission;
+    private double net;
+    private long rides;
+
+    private long version; // bumped by every write, so the rebuild can tell whether a bucket moved under it
+
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,45 @@
+package com.takeme.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Notifications past the retention age, moved out of the hot notifications table by
+ * NotificationRetentionService. Keeps the original id; no foreign keys.
+ */
+@Entity
+@Table(name = "notifications_archive", indexes = {
+    @Index(name = "idx_user_created", columnList = "user_id, created_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationArchive {
+    @Id
+    private Long id;
+    
+    @Column(nullable = false)
+    private Long userId;
+    
+    @Column(nullable = false)
+    private String title;
+    
+    @Column(length = 500)
+    private String message;
+    
+    private String type;
+    
+    private Long relatedRideId;
+    
+    private Boolean isRead;
+    
+    private LocalDateTime createdAt;
+    
+    private LocalDateTime readAt;
+    
+    private LocalDateTime archivedAt;
+}
@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
+import org.springframework.data.annotation.CreatedDate;
 
 import java.time.LocalDateTime;
 
@@ -48,6 +49,8 @@ public class Ride {
     @Column(columnDefinition = "DOUBLE DEFAULT 0.0")
     private Double fare = 0.0;
     
+    private Double surgeMultiplier; // applied to the fare when the ride was requested
+    
     private Double distance; // in kilometers
     private Integer duration; // in minutes
     
@@ -72,6 +75,13 @@ public class Ride {
     private String paymentMethod;
     private String paymentStatus;
     
+    // Earnings rollup progress: claimed (earningsRecorded, earningsRecordedAt), then folded into the
+    // driver's earnings buckets (earningsApplied)
+    private Boolean earningsRecorded;
+    private LocalDateTime earningsRecordedAt;
+    private Boolean earningsApplied;
+    
+    @CreatedDate
     @CreationTimestamp
     @Column(updatable = false)
     private LocalDateTime createdAt;
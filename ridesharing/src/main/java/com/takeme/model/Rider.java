@@ -32,8 +32,11 @@ public class Rider {
     private String location;
     private String profilePicture;
     
+    // Only changed by WalletService's $inc (see Driver.walletBalance)
     private Double walletBalance = 0.0;
     
+    private Long walletSeq = 0L;
+    
     private Double rating = 0.0;
     
     private Integer totalRides = 0;
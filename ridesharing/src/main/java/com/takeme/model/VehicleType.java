@@ -0,0 +1,46 @@
+package com.takeme.model;
+
+/**
+ * Vehicle classes the platform dispatches and prices. Drivers and rides still store the
+ * free-text label ("Bike", "SUV", ...); use {@link #fromLabel(String)} to map it.
+ */
+public enum VehicleType {
+    BIKE("Bike"),
+    CAR("Car"),
+    SUV("SUV"),
+    VAN("Van"),
+    AUTO("Auto");
+
+    private final String label;
+
+    VehicleType(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Case-insensitive lookup by label, or null when the value is blank or unknown.
+     */
+    public static VehicleType fromLabel(String value) {
+        if (value == null || value.isBlank()) return null;
+        String trimmed = value.trim();
+        for (VehicleType type : values()) {
+            if (type.label.equalsIgnoreCase(trimmed) || type.name().equalsIgnoreCase(trimmed)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Same as {@link #fromLabel(String)} but falls back to CAR, which is how unknown types
+     * ("Sedan", missing values) have always been treated.
+     */
+    public static VehicleType fromLabelOrDefault(String value) {
+        VehicleType type = fromLabel(value);
+        return type != null ? type : CAR;
+    }
+}
@@ -0,0 +1,37 @@
+package com.takeme.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * An account's wallet balance as of ledger entry lastSeq ("RIDER:42", "DRIVER:7"). The live
+ * balance is this plus the deltas of the ledger entries after lastSeq.
+ */
+@Document(collection = "wallet_balance_snapshots")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletBalanceSnapshot {
+
+    @Id
+    private String id;
+
+    private WalletLedgerEntry.AccountType accountType;
+
+    private Long accountId;
+
+    private double balance;
+
+    private long lastSeq;
+
+    private LocalDateTime takenAt;
+
+    // Set by the verifier when the ledger after this snapshot does not replay onto the account;
+    // balance reads use the account's own walletBalance until a later pass checks out again
+    private boolean drifted;
+}
@@ -0,0 +1,56 @@
+package com.takeme.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * One wallet balance movement. seq is the account's walletSeq after the movement, so an account's
+ * entries run 1, 2, 3, ... and replaying their deltas in seq order reproduces its balance. An entry
+ * is written PENDING before the account is touched and marked APPLIED after; whatever its status,
+ * an entry counts once the account's walletSeq has reached its seq. A PENDING entry that can no
+ * longer apply (a debit the balance does not cover) is deleted, which frees its seq.
+ */
+@Document(collection = "wallet_ledger")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletLedgerEntry {
+
+    @Id
+    private String id;
+
+    private AccountType accountType;
+
+    private Long accountId;
+
+    private long seq;
+
+    private double delta; // positive for credits, negative for debits
+
+    private double balanceAfter;
+
+    private EntryType type;
+
+    private String reference; // transactionId of the matching Transaction row
+
+    private LocalDateTime createdAt;
+
+    private Status status; // null on entries written before entries had a status; those are all applied
+
+    public enum AccountType {
+        RIDER, DRIVER
+    }
+
+    public enum EntryType {
+        RECHARGE, RIDE_PAYMENT
+    }
+
+    public enum Status {
+        PENDING, APPLIED
+    }
+}
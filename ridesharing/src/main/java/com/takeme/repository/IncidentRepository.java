@@ -11,4 +11,5 @@ public interface IncidentRepository extends JpaRepository<Incident, Long> {
     List<Incident> findByUserId(Long userId);
     List<Incident> findByRideId(Long rideId);
     List<Incident> findByStatus(Incident.IncidentStatus status);
+    long countByStatus(Incident.IncidentStatus status);
 }
@@ -2,7 +2,6 @@ package com.takeme.repository;
 
 import com.takeme.model.Review;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -12,7 +11,5 @@ public interface ReviewRepository extends JpaRepository<Review, Long> {
     List<Review> findByRevieweeId(Long revieweeId);
     List<Review> findByReviewerId(Long reviewerId);
     List<Review> findByRideId(Long rideId);
-    
-    @Query("SELECT AVG(r.rating) FROM Review r WHERE r.revieweeId = :revieweeId")
-    Double getAverageRatingForDriver(Long revieweeId);
+    List<Review> findByRideIdAndReviewerId(Long rideId, Long reviewerId);
 }
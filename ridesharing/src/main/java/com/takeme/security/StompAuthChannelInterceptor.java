@@ -0,0 +1,62 @@
+package com.takeme.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Collections;
+
+/**
+ * Authenticates STOMP sessions from the JWT in the CONNECT frame's Authorization header. The
+ * HTTP handshake on /ws-ride stays open, so this is what ties a session to a user for
+ * /user/... destinations. Anonymous sessions can still follow public /topic updates.
+ */
+@Component
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+
+    @Autowired
+    private JwtTokenProvider tokenProvider;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) return message;
+
+        if (accessor.getCommand() == StompCommand.CONNECT) {
+            String bearerToken = accessor.getFirstNativeHeader("Authorization");
+            if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
+                String jwt = bearerToken.substring(7);
+                if (!tokenProvider.validateToken(jwt)) {
+                    throw new MessagingException("Invalid or expired token");
+                }
+                String role = tokenProvider.getRoleFromToken(jwt);
+                Long userId = tokenProvider.getUserIdFromToken(jwt);
+                accessor.setUser(new UsernamePasswordAuthenticationToken(
+                        StompPrincipals.name(role, userId),
+                        null,
+                        Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role))
+                ));
+            }
+        } else if (accessor.getCommand() == StompCommand.SUBSCRIBE) {
+            String destination = accessor.getDestination();
+            if (destination == null) return message;
+            // The broker's per-session queues are only reachable through /user/..., which resolves to the caller's own
+            if (destination.startsWith("/queue/")) {
+                throw new MessagingException("Subscribe to /user" + destination + " instead");
+            }
+            if (destination.startsWith("/user/") && accessor.getUser() == null) {
+                throw new MessagingException("Authentication required for " + destination);
+            }
+        }
+        return message;
+    }
+}
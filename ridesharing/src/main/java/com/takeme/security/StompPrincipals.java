@@ -0,0 +1,19 @@
+package com.takeme.security;
+
+/**
+ * Principal names for STOMP sessions. Riders and drivers have separate id sequences, so the role
+ * is part of the name and a rider can never receive a driver's user destinations.
+ */
+public final class StompPrincipals {
+
+    private StompPrincipals() {
+    }
+
+    public static String name(String role, Long userId) {
+        return role.toLowerCase() + ":" + userId;
+    }
+
+    public static String driver(Long driverId) {
+        return name("Driver", driverId);
+    }
+}
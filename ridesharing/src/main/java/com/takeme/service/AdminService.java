@@ -1,14 +1,29 @@
 package com.takeme.service;
 
+import com.takeme.dto.CursorPage;
+import com.takeme.dto.LeaderboardEntryDto;
 import com.takeme.model.*;
 import com.takeme.repository.*;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 @Service
 public class AdminService {
@@ -28,56 +43,18 @@ public class AdminService {
     @Autowired
     private IncidentRepository incidentRepository;
     
-    // Dashboard Statistics
+    @Autowired
+    private PlatformMetricsRegistry platformMetrics;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private DriverLeaderboard driverLeaderboard;
+    
+    // Dashboard Statistics, served from the live counters
     public Map<String, Object> getDashboardStats() {
-        Map<String, Object> stats = new HashMap<>();
-        
-        // User statistics
-        long totalUsers = riderRepository.count();
-        long activeUsers = riderRepository.findAll().stream()
-            .filter(Rider::getActive)
-            .count();
-        
-        // Driver statistics  
-        long totalDrivers = driverRepository.count();
-        long activeDrivers = driverRepository.findByStatus(Driver.DriverStatus.AVAILABLE).size();
-        long onlineDrivers = driverRepository.findAll().stream()
-            .filter(d -> d.getStatus() != Driver.DriverStatus.OFFLINE)
-            .count();
-        
-        // Ride statistics
-        long totalRides = rideRepository.count();
-        long completedRides = rideRepository.findByStatus(Ride.RideStatus.COMPLETED).size();
-        long activeRides = rideRepository.findByStatus(Ride.RideStatus.STARTED).size() +
-                          rideRepository.findByStatus(Ride.RideStatus.ACCEPTED).size();
-        long requestedRides = rideRepository.findByStatus(Ride.RideStatus.REQUESTED).size();
-        
-        // Revenue statistics
-        double totalRevenue = rideRepository.findByStatus(Ride.RideStatus.COMPLETED).stream()
-            .mapToDouble(Ride::getFare)
-            .sum();
-        
-        long totalTransactions = transactionRepository.count();
-        
-        // Incident statistics
-        long totalIncidents = incidentRepository.count();
-        long unresolvedIncidents = incidentRepository.findByStatus(Incident.IncidentStatus.REPORTED).size();
-        
-        stats.put("totalUsers", totalUsers);
-        stats.put("activeUsers", activeUsers);
-        stats.put("totalDrivers", totalDrivers);
-        stats.put("activeDrivers", activeDrivers);
-        stats.put("onlineDrivers", onlineDrivers);
-        stats.put("totalRides", totalRides);
-        stats.put("completedRides", completedRides);
-        stats.put("activeRides", activeRides);
-        stats.put("requestedRides", requestedRides);
-        stats.put("totalRevenue", totalRevenue);
-        stats.put("totalTransactions", totalTransactions);
-        stats.put("totalIncidents", totalIncidents);
-        stats.put("unresolvedIncidents", unresolvedIncidents);
-        
-        return stats;
+        return platformMetrics.snapshot();
     }
     
     // Get all users with pagination
@@ -99,16 +76,32 @@ public class AdminService {
     public Rider deactivateUser(Long userId) {
         Rider user = riderRepository.findById(userId)
             .orElseThrow(() -> new RuntimeException("User not found"));
+        boolean wasActive = Boolean.TRUE.equals(user.getActive());
         user.setActive(false);
-        return riderRepository.save(user);
+        setRiderActive(user, false);
+        platformMetrics.riderActiveChanged(wasActive, false);
+        return user;
     }
     
     // Activate user
     public Rider activateUser(Long userId) {
         Rider user = riderRepository.findById(userId)
             .orElseThrow(() -> new RuntimeException("User not found"));
+        boolean wasActive = Boolean.TRUE.equals(user.getActive());
         user.setActive(true);
-        return riderRepository.save(user);
+        setRiderActive(user, true);
+        platformMetrics.riderActiveChanged(wasActive, true);
+        return user;
+    }
+    
+    // Targeted $set, so the rider's wallet is never written from this copy
+    private void setRiderActive(Rider user, boolean active) {
+        user.setUpdatedAt(LocalDateTime.now());
+        mongoTemplate.updateFirst(
+            new Query(Criteria.where("id").is(user.getId())),
+            new Update().set("active", active).set("updatedAt", user.getUpdatedAt()),
+            Rider.class
+        );
     }
     
     // Verify driver
@@ -116,38 +109,115 @@ public class AdminService {
         Driver driver = driverRepository.findById(driverId)
             .orElseThrow(() -> new RuntimeException("Driver not found"));
         driver.setVerified(true);
-        return driverRepository.save(driver);
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(driverId)), new Update().set("verified", true), Driver.class);
+        return driver;
     }
     
-    // Get revenue report
-    public Map<String, Object> getRevenueReport() {
-        Map<String, Object> report = new HashMap<>();
+    // Get revenue report: totals plus per-period and per-vehicle-type breakdowns, all from one $facet aggregation
+    public Map<String, Object> getRevenueReport(LocalDate from, LocalDate to, String bucket) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new RuntimeException("'from' must not be after 'to'");
+        }
+        String period = bucket != null ? bucket.toLowerCase() : "day";
+        String format = switch (period) {
+            case "day" -> "%Y-%m-%d";
+            case "week" -> "%G-W%V";
+            case "month" -> "%Y-%m";
+            default -> throw new RuntimeException("Invalid bucket: " + bucket + " (use day, week or month)");
+        };
+        
+        Criteria completed = Criteria.where("status").is(Ride.RideStatus.COMPLETED);
+        if (from != null || to != null) {
+            completed = completed.and("completedAt");
+            if (from != null) completed = completed.gte(from.atStartOfDay());
+            if (to != null) completed = completed.lt(to.plusDays(1).atStartOfDay());
+        }
+        
+        // completedAt is stored in UTC from the server's local time, so bucket in the same zone
+        AggregationExpression periodKey = DateOperators.DateToString.dateOf("completedAt")
+            .toString(format)
+            .withTimezone(DateOperators.Timezone.valueOf(ZoneId.systemDefault().getId()));
         
-        List<Ride> completedRides = rideRepository.findByStatus(Ride.RideStatus.COMPLETED);
+        Aggregation aggregation = Aggregation.newAggregation(
+            Aggregation.match(completed),
+            Aggregation.project("fare", "vehicleType", "completedAt"),
+            Aggregation.facet(
+                    Aggregation.group().sum("fare").as("revenue").avg("fare").as("averageFare").count().as("rides"))
+                .as("totals")
+                .and(
+                    Aggregation.project("fare").and(periodKey).as("period"),
+                    Aggregation.group("period").sum("fare").as("revenue").count().as("rides"),
+                    Aggregation.sort(Sort.Direction.ASC, "_id"))
+                .as("byPeriod")
+                .and(
+                    Aggregation.group("vehicleType").sum("fare").as("revenue").avg("fare").as("averageFare").count().as("rides"),
+                    Aggregation.sort(Sort.Direction.DESC, "revenue"))
+                .as("byVehicleType")
+        );
+        Document result = mongoTemplate.aggregate(aggregation, Ride.class, Document.class).getUniqueMappedResult();
         
-        double totalRevenue = completedRides.stream()
-            .mapToDouble(Ride::getFare)
-            .sum();
+        List<Document> totalsRows = result != null ? result.getList("totals", Document.class) : List.of();
+        Document totals = totalsRows.isEmpty() ? new Document() : totalsRows.get(0);
+        double totalRevenue = number(totals.get("revenue"));
         
-        double avgFare = completedRides.isEmpty() ? 0 :
-            completedRides.stream()
-                .mapToDouble(Ride::getFare)
-                .average()
-                .orElse(0);
+        List<Map<String, Object>> byPeriod = new ArrayList<>();
+        for (Document row : result != null ? result.getList("byPeriod", Document.class) : List.<Document>of()) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("period", row.get("_id"));
+            entry.put("revenue", number(row.get("revenue")));
+            entry.put("rides", (long) number(row.get("rides")));
+            byPeriod.add(entry);
+        }
         
+        List<Map<String, Object>> byVehicleType = new ArrayList<>();
+        for (Document row : result != null ? result.getList("byVehicleType", Document.class) : List.<Document>of()) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("vehicleType", row.get("_id") != null ? row.get("_id") : "Unknown");
+            entry.put("revenue", number(row.get("revenue")));
+            entry.put("averageFare", number(row.get("averageFare")));
+            entry.put("rides", (long) number(row.get("rides")));
+            byVehicleType.add(entry);
+        }
+        
+        Map<String, Object> report = new HashMap<>();
+        report.put("from", from);
+        report.put("to", to);
+        report.put("bucket", period);
         report.put("totalRevenue", totalRevenue);
-        report.put("averageFare", avgFare);
-        report.put("totalCompletedRides", completedRides.size());
-        report.put("commission", totalRevenue * 0.15); // 15% commission
+        report.put("averageFare", number(totals.get("averageFare")));
+        report.put("totalCompletedRides", (long) number(totals.get("rides")));
+        report.put("commission", totalRevenue * DriverEarningsRollupService.COMMISSION_RATE);
+        report.put("byPeriod", byPeriod);
+        report.put("byVehicleType", byVehicleType);
         
         return report;
     }
     
-    // Get top performing drivers
+    private static double number(Object value) {
+        return value instanceof Number n ? n.doubleValue() : 0.0;
+    }
+    
+    // Get top performing drivers, ranked by the leaderboard; only those 10 documents are loaded
     public List<Driver> getTopDrivers() {
-        return driverRepository.findAll().stream()
-            .sorted((d1, d2) -> Double.compare(d2.getRating(), d1.getRating()))
-            .limit(10)
+        List<Long> topIds = driverLeaderboard.topDriverIds(10);
+        Map<Long, Driver> driversById = new HashMap<>();
+        for (Driver driver : mongoTemplate.find(new Query(Criteria.where("id").in(topIds)), Driver.class)) {
+            driversById.put(driver.getId(), driver);
+        }
+        return topIds.stream()
+            .map(driversById::get)
+            .filter(Objects::nonNull)
             .toList();
     }
+    
+    public CursorPage<LeaderboardEntryDto> getDriverLeaderboard(String vehicleType, int minRides, String cursor, int limit) {
+        VehicleType type = null;
+        if (vehicleType != null && !vehicleType.isBlank()) {
+            type = VehicleType.fromLabel(vehicleType);
+            if (type == null) {
+                throw new RuntimeException("Invalid vehicle type: " + vehicleType);
+            }
+        }
+        return driverLeaderboard.page(type, Math.max(0, minRides), cursor, limit);
+    }
 }
@@ -0,0 +1,97 @@
+package com.takeme.service;
+
+import java.util.Arrays;
+
+/**
+ * Hungarian algorithm for rectangular cost matrices. Returns, for every row, the column it is
+ * assigned to (or -1 when there are more rows than columns). Runs in O(n^2 * m) for n <= m.
+ */
+final class AssignmentSolver {
+
+    private AssignmentSolver() {
+    }
+
+    static int[] solve(double[][] cost) {
+        int rows = cost.length;
+        if (rows == 0) return new int[0];
+        int cols = cost[0].length;
+        if (cols == 0) {
+            int[] none = new int[rows];
+            Arrays.fill(none, -1);
+            return none;
+        }
+
+        if (rows > cols) {
+            // Solve the transpose and invert it so the inner loop always runs over the wider side
+            double[][] transposed = new double[cols][rows];
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < cols; j++) {
+                    transposed[j][i] = cost[i][j];
+                }
+            }
+            int[] byColumn = solve(transposed);
+            int[] assignment = new int[rows];
+            Arrays.fill(assignment, -1);
+            for (int j = 0; j < cols; j++) {
+                if (byColumn[j] >= 0) assignment[byColumn[j]] = j;
+            }
+            return assignment;
+        }
+
+        // Potentials and matching are 1-indexed; column 0 is a virtual start column
+        double[] u = new double[rows + 1];
+        double[] v = new double[cols + 1];
+        int[] match = new int[cols + 1];
+        int[] way = new int[cols + 1];
+        double[] minv = new double[cols + 1];
+        boolean[] used = new boolean[cols + 1];
+
+        for (int i = 1; i <= rows; i++) {
+            match[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Double.MAX_VALUE);
+            Arrays.fill(used, false);
+
+            do {
+                used[j0] = true;
+                int i0 = match[j0];
+                double delta = Double.MAX_VALUE;
+                int j1 = 0;
+                for (int j = 1; j <= cols; j++) {
+                    if (used[j]) continue;
+                    double reduced = cost[i0 - 1][j - 1] - u[i0] - v[j];
+                    if (reduced < minv[j]) {
+                        minv[j] = reduced;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= cols; j++) {
+                    if (used[j]) {
+                        u[match[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (match[j0] != 0);
+
+            do {
+                int j1 = way[j0];
+                match[j0] = match[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        int[] assignment = new int[rows];
+        Arrays.fill(assignment, -1);
+        for (int j = 1; j <= cols; j++) {
+            if (match[j] != 0) assignment[match[j] - 1] = j - 1;
+        }
+        return assignment;
+    }
+}
@@ -27,6 +27,12 @@ public class AuthService {
     @Autowired
     private JwtTokenProvider jwtTokenProvider;
     
+    @Autowired
+    private PlatformMetricsRegistry platformMetrics;
+    
+    @Autowired
+    private DriverLeaderboard driverLeaderboard;
+    
     
     public AuthResponse riderLogin(LoginRequest request) {
         Optional<Rider> riderOpt = riderRepository.findByEmail(request.getEmail().toLowerCase());
@@ -110,6 +116,7 @@ public class AuthService {
         rider.setActive(true);
         
         rider = riderRepository.save(rider);
+        platformMetrics.riderRegistered(true);
         
         String token = jwtTokenProvider.generateToken(rider.getEmail(), rider.getRole(), rider.getId());
         
@@ -150,6 +157,8 @@ public class AuthService {
         driver.setActive(true);
         
         driver = driverRepository.save(driver);
+        platformMetrics.driverStatusChanged(null, Driver.DriverStatus.OFFLINE);
+        driverLeaderboard.update(driver);
         
         String token = jwtTokenProvider.generateToken(driver.getEmail(), driver.getRole(), driver.getId());
         
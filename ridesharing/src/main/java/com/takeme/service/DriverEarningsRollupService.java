@@ -0,0 +1,256 @@
+package com.takeme.service;
+
+import com.mongodb.client.result.UpdateResult;
+import com.takeme.model.DriverEarningsBucket;
+import com.takeme.model.Ride;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Per-driver daily earnings buckets. Each completed ride is folded in once with an atomic $inc,
+ * so the dashboard reads at most a month of buckets instead of every ride the driver has done.
+ * The rebuild recomputes the buckets from the rides themselves and corrects any that drifted.
+ */
+@Service
+public class DriverEarningsRollupService {
+
+    public static final double COMMISSION_RATE = 0.15; // 15% platform commission
+
+    private static final String LIFETIME = "total";
+
+    // Differences below this are float noise from repeated $inc, not drift
+    private static final double TOLERANCE = 0.005;
+
+    // A ride claimed this long ago but never marked applied lost its writer; the rebuild takes it over
+    private static final long STALE_CLAIM_MINUTES = 10;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Adds a completed ride to its driver's buckets. Safe to call more than once for the same ride
+     * (Kafka redelivery, retries): only the call that flips the ride's earningsRecorded flag counts it.
+     */
+    public void recordCompletedRide(Long rideId) {
+        if (rideId == null) return;
+
+        Query unrecorded = new Query(Criteria.where("id").is(rideId)
+            .and("status").is(Ride.RideStatus.COMPLETED)
+            .and("earningsRecorded").ne(true));
+        Update claim = new Update().set("earningsRecorded", true).set("earningsRecordedAt", LocalDateTime.now());
+        Ride ride = mongoTemplate.findAndModify(unrecorded, claim, FindAndModifyOptions.options().returnNew(true), Ride.class);
+        if (ride == null || ride.getDriverId() == null) return;
+
+        double fare = ride.getFare() != null ? ride.getFare() : 0.0;
+        increment(ride.getDriverId(), dayOf(ride), fare);
+        increment(ride.getDriverId(), null, fare);
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(rideId)),
+            new Update().set("earningsApplied", true), Ride.class);
+    }
+
+    /**
+     * Daily buckets in [from, to], newest first. Days without rides have no bucket.
+     */
+    public List<DriverEarningsBucket> getDailyBuckets(Long driverId, LocalDate from, LocalDate to) {
+        Query query = new Query(Criteria.where("driverId").is(driverId)
+            .and("day").gte(from.toString()).lte(to.toString()))
+            .with(Sort.by(Sort.Direction.DESC, "day"));
+        return mongoTemplate.find(query, DriverEarningsBucket.class);
+    }
+
+    public DriverEarningsBucket getLifetimeBucket(Long driverId) {
+        DriverEarningsBucket bucket = mongoTemplate.findById(bucketId(driverId, null), DriverEarningsBucket.class);
+        return bucket != null ? bucket : new DriverEarningsBucket(bucketId(driverId, null), driverId, null, 0, 0, 0, 0, 0, null);
+    }
+
+    @Scheduled(cron = "${app.earnings.rebuild-cron:0 30 3 * * *}")
+    public void scheduledRebuild() {
+        rebuildAll();
+    }
+
+    /**
+     * Checks every driver with completed rides.
+     */
+    public Map<String, Object> rebuildAll() {
+        List<Long> driverIds = mongoTemplate.findDistinct(
+            new Query(Criteria.where("status").is(Ride.RideStatus.COMPLETED)), "driverId", Ride.class, Long.class);
+
+        int repaired = 0;
+        int skipped = 0;
+        for (Long driverId : driverIds) {
+            if (driverId == null) continue;
+            try {
+                int result = rebuildDriver(driverId);
+                if (result < 0) {
+                    skipped++;
+                } else {
+                    repaired += result;
+                }
+            } catch (Exception e) {
+                System.err.println("Earnings rebuild failed for driver " + driverId + ": " + e.getMessage());
+            }
+        }
+        System.out.println("Earnings rebuild checked " + driverIds.size() + " drivers, repaired " + repaired
+            + " buckets, skipped " + skipped + " drivers with rides being recorded.");
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("driversChecked", driverIds.size());
+        result.put("bucketsRepaired", repaired);
+        result.put("driversSkipped", skipped);
+        return result;
+    }
+
+    /**
+     * Recomputes one driver's buckets from the raw rides and applies the difference to those that
+     * drifted. Returns the number of buckets corrected, or -1 if the driver was skipped because a
+     * ride was being recorded at the same time; the next pass picks it up.
+     *
+     * The fence: stored buckets are read before the rides, and every correction is conditional on
+     * the bucket's version being unchanged since. A ride still between its claim and its
+     * earningsApplied mark skips the driver, because its $inc may or may not be in what was read.
+     */
+    public int rebuildDriver(Long driverId) {
+        // Take over rides the live path never claimed; this rebuild counts them
+        mongoTemplate.updateMulti(new Query(Criteria.where("driverId").is(driverId)
+                .and("status").is(Ride.RideStatus.COMPLETED)
+                .and("earningsRecorded").ne(true)),
+            new Update().set("earningsRecorded", true).set("earningsRecordedAt", LocalDateTime.now()).set("earningsApplied", true),
+            Ride.class);
+
+        Map<String, DriverEarningsBucket> stored = new HashMap<>();
+        for (DriverEarningsBucket bucket : mongoTemplate.find(
+                new Query(Criteria.where("driverId").is(driverId)), DriverEarningsBucket.class)) {
+            stored.put(bucket.getId(), bucket);
+        }
+
+        Query rides = new Query(Criteria.where("driverId").is(driverId).and("status").is(Ride.RideStatus.COMPLETED));
+        rides.fields().include("fare").include("completedAt").include("createdAt")
+            .include("earningsRecorded").include("earningsRecordedAt").include("earningsApplied");
+
+        LocalDateTime staleBefore = LocalDateTime.now().minusMinutes(STALE_CLAIM_MINUTES);
+        Map<String, double[]> expected = new HashMap<>(); // bucket id -> {gross, rides}
+        expected.put(bucketId(driverId, null), new double[2]);
+        try (Stream<Ride> stream = mongoTemplate.stream(rides, Ride.class)) {
+            Iterator<Ride> it = stream.iterator();
+            while (it.hasNext()) {
+                Ride ride = it.next();
+                if (!Boolean.TRUE.equals(ride.getEarningsRecorded())) {
+                    continue; // Completed after the takeover above; the live path will add it
+                }
+                boolean applied = Boolean.TRUE.equals(ride.getEarningsApplied());
+                boolean stale = ride.getEarningsRecordedAt() == null || ride.getEarningsRecordedAt().isBefore(staleBefore);
+                if (!applied && !stale) {
+                    return -1;
+                }
+                double fare = ride.getFare() != null ? ride.getFare() : 0.0;
+                for (String id : new String[] { bucketId(driverId, dayOf(ride)), bucketId(driverId, null) }) {
+                    double[] totals = expected.computeIfAbsent(id, d -> new double[2]);
+                    totals[0] += fare;
+                    totals[1]++;
+                }
+            }
+        }
+
+        int repaired = 0;
+        for (DriverEarningsBucket bucket : stored.values()) {
+            if (bucket.getDay() != null && !expected.containsKey(bucket.getId())) {
+                if (mongoTemplate.remove(new Query(versionOf(bucket)), DriverEarningsBucket.class).getDeletedCount() > 0) {
+                    repaired++;
+                }
+            }
+        }
+        for (Map.Entry<String, double[]> bucket : expected.entrySet()) {
+            if (correct(driverId, bucket.getKey(), stored.get(bucket.getKey()), bucket.getValue())) {
+                repaired++;
+            }
+        }
+        return repaired;
+    }
+
+    // Applies (expected - stored) as an $inc, only if nothing else wrote the bucket since it was read
+    private boolean correct(Long driverId, String id, DriverEarningsBucket current, double[] totals) {
+        double gross = totals[0];
+        long rides = (long) totals[1];
+        double storedGross = current != null ? current.getGross() : 0.0;
+        long storedRides = current != null ? current.getRides() : 0;
+        if (storedRides == rides && Math.abs(storedGross - gross) < TOLERANCE) {
+            return false;
+        }
+
+        double commission = gross * COMMISSION_RATE;
+        double storedCommission = current != null ? current.getCommission() : 0.0;
+        double storedNet = current != null ? current.getNet() : 0.0;
+        Update update = new Update()
+            .inc("gross", gross - storedGross)
+            .inc("commission", commission - storedCommission)
+            .inc("net", (gross - commission) - storedNet)
+            .inc("rides", rides - storedRides)
+            .inc("version", 1)
+            .set("updatedAt", LocalDateTime.now());
+
+        if (current != null) {
+            UpdateResult result = mongoTemplate.updateFirst(new Query(versionOf(current)), update, DriverEarningsBucket.class);
+            return result.getMatchedCount() > 0;
+        }
+        // New bucket: if a live $inc created it in the meantime, the insert collides and the next pass retries
+        String day = id.substring(id.indexOf(':') + 1);
+        update.setOnInsert("driverId", driverId);
+        if (!LIFETIME.equals(day)) {
+            update.setOnInsert("day", day);
+        }
+        try {
+            mongoTemplate.upsert(new Query(Criteria.where("id").is(id).and("version").in(0L, null)), update, DriverEarningsBucket.class);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    // Buckets written before versions were tracked have none, which reads as 0
+    private static Criteria versionOf(DriverEarningsBucket bucket) {
+        Criteria criteria = Criteria.where("id").is(bucket.getId());
+        return bucket.getVersion() == 0 ? criteria.and("version").in(0L, null) : criteria.and("version").is(bucket.getVersion());
+    }
+
+    private void increment(Long driverId, String day, double fare) {
+        double commission = fare * COMMISSION_RATE;
+        Update update = new Update()
+            .inc("gross", fare)
+            .inc("commission", commission)
+            .inc("net", fare - commission)
+            .inc("rides", 1)
+            .inc("version", 1)
+            .set("updatedAt", LocalDateTime.now())
+            .setOnInsert("driverId", driverId);
+        if (day != null) {
+            update.setOnInsert("day", day);
+        }
+        mongoTemplate.upsert(new Query(Criteria.where("id").is(bucketId(driverId, day))), update, DriverEarningsBucket.class);
+    }
+
+    // Rides saved before completedAt was tracked fall back to their creation day
+    private static String dayOf(Ride ride) {
+        LocalDateTime at = ride.getCompletedAt() != null ? ride.getCompletedAt() : ride.getCreatedAt();
+        return (at != null ? at.toLocalDate() : LocalDate.now()).toString();
+    }
+
+    private static String bucketId(Long driverId, String day) {
+        return driverId + ":" + (day != null ? day : LIFETIME);
+    }
+}
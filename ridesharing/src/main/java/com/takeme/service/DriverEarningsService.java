@@ -1,71 +1,83 @@
 package com.takeme.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.takeme.dto.CursorPage;
+import com.takeme.dto.EarningsRecordDto;
+import com.takeme.dto.KeysetCursor;
 import com.takeme.model.Driver;
+import com.takeme.model.DriverEarningsBucket;
 import com.takeme.model.Ride;
 import com.takeme.repository.DriverRepository;
-import com.takeme.repository.RideRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class DriverEarningsService {
     
+    private static final int MAX_PAGE_SIZE = 50;
+    
+    // Rows per cursor batch and per flush of the NDJSON export
+    private static final int EXPORT_FLUSH_ROWS = 500;
+    
     @Autowired
     private DriverRepository driverRepository;
     
     @Autowired
-    private RideRepository rideRepository;
+    private DriverService driverService;
+    
+    @Autowired
+    private DriverEarningsRollupService earningsRollupService;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
     
     public Map<String, Object> getDriverEarnings(Long driverId) {
         Driver driver = driverRepository.findById(driverId)
             .orElseThrow(() -> new RuntimeException("Driver not found"));
         
-        List<Ride> completedRides = rideRepository.findByDriverIdAndStatus(
-            driverId, Ride.RideStatus.COMPLETED
-        );
-        
-        double totalEarnings = completedRides.stream()
-            .mapToDouble(Ride::getFare)
-            .sum();
-        
-        double commission = totalEarnings * 0.15; // 15% platform commission
-        double netEarnings = totalEarnings - commission;
+        // Today, the last 7 days and the last 30 days all come out of one read of at most 30 daily buckets
+        LocalDate today = LocalDate.now();
+        String weekStart = today.minusDays(6).toString();
+        double todayEarnings = 0;
+        double weekEarnings = 0;
+        double monthEarnings = 0;
+        for (DriverEarningsBucket bucket : earningsRollupService.getDailyBuckets(driverId, today.minusDays(29), today)) {
+            monthEarnings += bucket.getGross();
+            if (bucket.getDay().compareTo(weekStart) >= 0) {
+                weekEarnings += bucket.getGross();
+            }
+            if (bucket.getDay().equals(today.toString())) {
+                todayEarnings += bucket.getGross();
+            }
+        }
         
-        // Today's earnings
-        LocalDateTime todayStart = LocalDateTime.now().toLocalDate().atStartOfDay();
-        double todayEarnings = completedRides.stream()
-            .filter(r -> r.getCompletedAt() != null && r.getCompletedAt().isAfter(todayStart))
-            .mapToDouble(Ride::getFare)
-            .sum();
-        
-        // This week's earnings
-        LocalDateTime weekStart = LocalDateTime.now().minusDays(7);
-        double weekEarnings = completedRides.stream()
-            .filter(r -> r.getCompletedAt() != null && r.getCompletedAt().isAfter(weekStart))
-            .mapToDouble(Ride::getFare)
-            .sum();
-        
-        // This month's earnings
-        LocalDateTime monthStart = LocalDateTime.now().minusDays(30);
-        double monthEarnings = completedRides.stream()
-            .filter(r -> r.getCompletedAt() != null && r.getCompletedAt().isAfter(monthStart))
-            .mapToDouble(Ride::getFare)
-            .sum();
+        DriverEarningsBucket lifetime = earningsRollupService.getLifetimeBucket(driverId);
         
         Map<String, Object> earnings = new HashMap<>();
-        earnings.put("totalEarnings", totalEarnings);
-        earnings.put("commission", commission);
-        earnings.put("netEarnings", netEarnings);
+        earnings.put("totalEarnings", lifetime.getGross());
+        earnings.put("commission", lifetime.getCommission());
+        earnings.put("netEarnings", lifetime.getNet());
         earnings.put("todayEarnings", todayEarnings);
         earnings.put("weekEarnings", weekEarnings);
         earnings.put("monthEarnings", monthEarnings);
-        earnings.put("totalRides", completedRides.size());
+        earnings.put("totalRides", lifetime.getRides());
         earnings.put("rating", driver.getRating());
         earnings.put("walletBalance", driver.getWalletBalance());
         
@@ -73,12 +85,10 @@ public class DriverEarningsService {
     }
     
     public List<Map<String, Object>> getEarningsHistory(Long driverId) {
-        List<Ride> completedRides = rideRepository.findByDriverIdAndStatus(
-            driverId, Ride.RideStatus.COMPLETED
-        );
+        // Sorted by Mongo; rides with no completedAt come last instead of failing the comparator
+        Query query = earningsQuery(Criteria.where("driverId").is(driverId).and("status").is(Ride.RideStatus.COMPLETED));
         
-        return completedRides.stream()
-            .sorted((r1, r2) -> r2.getCompletedAt().compareTo(r1.getCompletedAt()))
+        return mongoTemplate.find(query, Ride.class).stream()
             .map(ride -> {
                 Map<String, Object> record = new HashMap<>();
                 record.put("rideId", ride.getId());
@@ -93,32 +103,84 @@ public class DriverEarningsService {
             .collect(Collectors.toList());
     }
     
-    public List<Driver> getNearbyDrivers(Double latitude, Double longitude, Double radiusKm) {
-        // Simple distance calculation - in production, use spatial queries
-        List<Driver> availableDrivers = driverRepository.findByStatus(Driver.DriverStatus.AVAILABLE);
+    // Keyset page over (completedAt desc, id desc); served by the driver_earnings_history index
+    public CursorPage<EarningsRecordDto> getEarningsHistoryPage(Long driverId, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        KeysetCursor after = KeysetCursor.decode(cursor);
         
-        return availableDrivers.stream()
-            .filter(d -> d.getCurrentLatitude() != null && d.getCurrentLongitude() != null)
-            .filter(d -> {
-                double distance = calculateDistance(
-                    latitude, longitude,
-                    d.getCurrentLatitude(), d.getCurrentLongitude()
-                );
-                return distance <= radiusKm;
-            })
-            .collect(Collectors.toList());
+        Criteria criteria = Criteria.where("driverId").is(driverId).and("status").is(Ride.RideStatus.COMPLETED);
+        if (after != null && after.timestamp() != null) {
+            criteria = criteria.orOperator(
+                Criteria.where("completedAt").lt(after.timestamp()),
+                Criteria.where("completedAt").is(after.timestamp()).and("id").lt(after.id()),
+                Criteria.where("completedAt").is(null)
+            );
+        } else if (after != null) {
+            criteria = criteria.and("completedAt").is(null).and("id").lt(after.id());
+        }
+        
+        List<Ride> rides = mongoTemplate.find(earningsQuery(criteria).limit(pageSize + 1), Ride.class);
+        
+        boolean hasMore = rides.size() > pageSize;
+        if (hasMore) {
+            rides = rides.subList(0, pageSize);
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            Ride last = rides.get(rides.size() - 1);
+            nextCursor = new KeysetCursor(last.getCompletedAt(), last.getId()).encode();
+        }
+        return new CursorPage<>(rides.stream().map(this::toRecord).collect(Collectors.toList()), nextCursor, hasMore);
     }
     
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371; // Radius of the earth in km
-        
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    /**
+     * Writes the driver's whole earnings history as NDJSON, one row per line, straight off the
+     * Mongo cursor. Memory stays flat however many rides the driver has.
+     */
+    public void streamEarningsHistory(Long driverId, OutputStream out) throws IOException {
+        Query query = earningsQuery(Criteria.where("driverId").is(driverId).and("status").is(Ride.RideStatus.COMPLETED));
+        query.cursorBatchSize(EXPORT_FLUSH_ROWS);
         
-        return R * c;
+        int sinceFlush = 0;
+        try (Stream<Ride> stream = mongoTemplate.stream(query, Ride.class)) {
+            Iterator<Ride> rides = stream.iterator();
+            while (rides.hasNext()) {
+                out.write(objectMapper.writeValueAsBytes(toRecord(rides.next())));
+                out.write('\n');
+                if (++sinceFlush == EXPORT_FLUSH_ROWS) {
+                    out.flush();
+                    sinceFlush = 0;
+                }
+            }
+        }
+        out.flush();
+    }
+    
+    private Query earningsQuery(Criteria criteria) {
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.DESC, "completedAt", "id"));
+        query.fields()
+            .include("completedAt")
+            .include("pickupAddress")
+            .include("dropoffAddress")
+            .include("fare")
+            .include("distance")
+            .include("rating");
+        return query;
+    }
+    
+    private EarningsRecordDto toRecord(Ride ride) {
+        return new EarningsRecordDto(
+            ride.getId(),
+            ride.getCompletedAt(),
+            ride.getPickupAddress(),
+            ride.getDropoffAddress(),
+            ride.getFare(),
+            ride.getDistance(),
+            ride.getRating()
+        );
+    }
+    
+    public List<Driver> getNearbyDrivers(Double latitude, Double longitude, Double radiusKm) {
+        return driverService.getNearbyDrivers(latitude, longitude, radiusKm);
     }
 }
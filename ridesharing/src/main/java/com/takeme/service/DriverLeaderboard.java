@@ -0,0 +1,163 @@
+package com.takeme.service;
+
+import com.takeme.dto.CursorPage;
+import com.takeme.dto.LeaderboardEntryDto;
+import com.takeme.model.Driver;
+import com.takeme.model.VehicleType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+
+/**
+ * Drivers ranked by rating (then ride count, then id), kept in concurrent skip lists: one for
+ * the whole fleet and one per vehicle type. Reading a page is a log(n) seek to the cursor plus
+ * a walk over the rows returned, so the top drivers never need a findAll() and a sort.
+ */
+@Service
+public class DriverLeaderboard {
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final Comparator<Entry> RANKING = Comparator
+            .comparingDouble(Entry::rating).reversed()
+            .thenComparing(Comparator.comparingInt(Entry::totalRides).reversed())
+            .thenComparingLong(Entry::driverId);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final NavigableSet<Entry> all = new ConcurrentSkipListSet<>(RANKING);
+    private final EnumMap<VehicleType, NavigableSet<Entry>> byVehicleType = new EnumMap<>(VehicleType.class);
+
+    private record Entry(long driverId, double rating, int totalRides, VehicleType vehicleType, String name) {}
+
+    public DriverLeaderboard() {
+        for (VehicleType type : VehicleType.values()) {
+            byVehicleType.put(type, new ConcurrentSkipListSet<>(RANKING));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        entries.clear();
+        all.clear();
+        byVehicleType.values().forEach(NavigableSet::clear);
+
+        Query query = new Query();
+        query.fields().include("name").include("rating").include("totalRides").include("vehicleType");
+        try (Stream<Driver> drivers = mongoTemplate.stream(query, Driver.class)) {
+            drivers.forEach(this::update);
+        }
+        System.out.println("Driver leaderboard rebuilt with " + entries.size() + " drivers.");
+    }
+
+    /**
+     * Re-ranks a driver after a rating, ride count or vehicle change. Cheap when nothing moved.
+     */
+    public void update(Driver driver) {
+        if (driver == null || driver.getId() == null) return;
+        Entry next = new Entry(
+                driver.getId(),
+                driver.getRating() != null ? driver.getRating() : 0.0,
+                driver.getTotalRides() != null ? driver.getTotalRides() : 0,
+                VehicleType.fromLabelOrDefault(driver.getVehicleType()),
+                driver.getName());
+
+        // compute() serializes updates per driver, so a driver is never in two positions at once
+        entries.compute(driver.getId(), (id, previous) -> {
+            if (next.equals(previous)) return previous;
+            if (previous != null) {
+                all.remove(previous);
+                byVehicleType.get(previous.vehicleType()).remove(previous);
+            }
+            all.add(next);
+            byVehicleType.get(next.vehicleType()).add(next);
+            return next;
+        });
+    }
+
+    public void remove(Long driverId) {
+        if (driverId == null) return;
+        entries.computeIfPresent(driverId, (id, previous) -> {
+            all.remove(previous);
+            byVehicleType.get(previous.vehicleType()).remove(previous);
+            return null;
+        });
+    }
+
+    public List<Long> topDriverIds(int limit) {
+        List<Long> ids = new ArrayList<>(limit);
+        for (Iterator<Entry> it = all.iterator(); it.hasNext() && ids.size() < limit; ) {
+            ids.add(it.next().driverId());
+        }
+        return ids;
+    }
+
+    /**
+     * One page of the ranking, optionally for one vehicle type and drivers with at least
+     * minRides completed rides. The min-rides filter skips rows while walking, so a very strict
+     * threshold walks past more of the list.
+     */
+    public CursorPage<LeaderboardEntryDto> page(VehicleType vehicleType, int minRides, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        NavigableSet<Entry> ranking = vehicleType != null ? byVehicleType.get(vehicleType) : all;
+        Entry after = decode(cursor);
+        NavigableSet<Entry> remaining = after != null ? ranking.tailSet(after, false) : ranking;
+
+        List<Entry> rows = new ArrayList<>(pageSize + 1);
+        for (Iterator<Entry> it = remaining.iterator(); it.hasNext() && rows.size() <= pageSize; ) {
+            Entry entry = it.next();
+            if (entry.totalRides() >= minRides) {
+                rows.add(entry);
+            }
+        }
+
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows = rows.subList(0, pageSize);
+        }
+        List<LeaderboardEntryDto> items = new ArrayList<>(rows.size());
+        for (Entry entry : rows) {
+            items.add(new LeaderboardEntryDto(entry.driverId(), entry.name(), entry.vehicleType().getLabel(),
+                    entry.rating(), entry.totalRides()));
+        }
+        String nextCursor = hasMore ? encode(rows.get(rows.size() - 1)) : null;
+        return new CursorPage<>(items, nextCursor, hasMore);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // The cursor carries the full sort key, so the next page seeks straight to it even if that driver moved since
+    private static String encode(Entry entry) {
+        String raw = entry.rating() + ":" + entry.totalRides() + ":" + entry.driverId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Entry decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            return new Entry(Long.parseLong(parts[2]), Double.parseDouble(parts[0]), Integer.parseInt(parts[1]), null, null);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
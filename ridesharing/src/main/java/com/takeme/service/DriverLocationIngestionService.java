@@ -0,0 +1,91 @@
+package com.takeme.service;
+
+import com.takeme.dto.LocationPayload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces driver GPS pings between flushes. Only the latest ping per driver survives a window,
+ * and each flush goes to Redis as a single scripted batch, so Redis load follows the number of
+ * drivers rather than their ping rate.
+ */
+@Service
+public class DriverLocationIngestionService {
+
+    @Autowired
+    private DriverLocationService driverLocationService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<Long, LocationPayload> pending = new ConcurrentHashMap<>();
+
+    private Counter pingsReceived;
+    private Counter pingsCoalesced;
+    private DistributionSummary flushSize;
+    private Timer flushLatency;
+
+    @PostConstruct
+    public void registerMetrics() {
+        pingsReceived = Counter.builder("driver.location.pings.received")
+                .description("Driver GPS pings accepted by the ingestion stage")
+                .register(meterRegistry);
+        pingsCoalesced = Counter.builder("driver.location.pings.coalesced")
+                .description("Pings replaced by a newer ping from the same driver before flushing")
+                .register(meterRegistry);
+        flushSize = DistributionSummary.builder("driver.location.flush.size")
+                .description("Drivers written per flush")
+                .register(meterRegistry);
+        flushLatency = Timer.builder("driver.location.flush.latency")
+                .description("Time spent writing one batch to the location store")
+                .register(meterRegistry);
+    }
+
+    public void submit(LocationPayload payload) {
+        if (payload.getDriverId() == null) return;
+        pingsReceived.increment();
+
+        pending.compute(payload.getDriverId(), (driverId, previous) -> {
+            if (previous == null) return payload;
+            pingsCoalesced.increment();
+            // Out-of-order delivery: never let an older fix overwrite a newer one
+            return payload.getTimestamp() >= previous.getTimestamp() ? payload : previous;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.driver-location.flush-interval-ms:200}")
+    public void flush() {
+        if (pending.isEmpty()) return;
+
+        List<LocationPayload> batch = new ArrayList<>(pending.size());
+        for (Long driverId : pending.keySet()) {
+            LocationPayload payload = pending.remove(driverId);
+            if (payload != null) {
+                batch.add(payload);
+            }
+        }
+        if (batch.isEmpty()) return;
+
+        try {
+            flushLatency.record(() -> driverLocationService.updateDriverLocations(batch));
+            flushSize.record(batch.size());
+        } catch (Exception e) {
+            // The next ping from each driver refreshes its position, so a failed batch is simply dropped
+            System.err.println("Driver location flush of " + batch.size() + " pings failed: " + e.getMessage());
+        }
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+}
@@ -1,46 +1,249 @@
 package com.takeme.service;
 
+import com.takeme.dto.LocationPayload;
 import com.takeme.dto.NearbyDriverDto;
+import com.takeme.dto.NearbyDriverSearchDto;
+import com.takeme.model.Driver;
+import com.takeme.model.VehicleType;
+import com.takeme.repository.DriverRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.geo.Circle;
 import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
 import org.springframework.data.geo.Point;
 import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
 public class DriverLocationService {
 
+    // Every driver that pings, whatever their status
     private static final String DRIVER_GEO_KEY = "drivers:locations";
 
+    // Companion sorted set: member = driverId, score = epoch millis of the last ping
+    private static final String DRIVER_LAST_SEEN_KEY = "drivers:locations:last-seen";
+
+    // AVAILABLE drivers only, one geo key per vehicle type (e.g. drivers:locations:type:SUV)
+    private static final String PARTITION_KEY_PREFIX = "drivers:locations:type:";
+
+    // Hash: driverId -> partition the driver currently sits in
+    private static final String DRIVER_PARTITION_KEY = "drivers:partition";
+
+    private static final int NEARBY_LIMIT = 20;
+
+    // Writes a batch of pings in one round trip. ARGV = now, prefix, then (id, lng, lat) triples.
+    // Partition keys are built inside the script, which is fine on our single Redis node.
+    private static final RedisScript<Long> UPDATE_LOCATIONS_SCRIPT = new DefaultRedisScript<>(
+            "local now, prefix = ARGV[1], ARGV[2] " +
+            "for i = 3, #ARGV, 3 do " +
+            "  local id, lng, lat = ARGV[i], ARGV[i + 1], ARGV[i + 2] " +
+            "  redis.call('GEOADD', KEYS[1], lng, lat, id) " +
+            "  redis.call('ZADD', KEYS[2], now, id) " +
+            "  local partition = redis.call('HGET', KEYS[3], id) " +
+            "  if partition then redis.call('GEOADD', prefix .. partition, lng, lat, id) end " +
+            "end " +
+            "return (#ARGV - 2) / 3",
+            Long.class);
+
+    // Moves a driver between partitions. ARGV = id, target partition ('' = none), prefix.
+    private static final RedisScript<Long> REPARTITION_SCRIPT = new DefaultRedisScript<>(
+            "local id, target, prefix = ARGV[1], ARGV[2], ARGV[3] " +
+            "local current = redis.call('HGET', KEYS[2], id) " +
+            "if current and current ~= target then redis.call('ZREM', prefix .. current, id) end " +
+            "if target == '' then redis.call('HDEL', KEYS[2], id) return 0 end " +
+            "redis.call('HSET', KEYS[2], id, target) " +
+            "local pos = redis.call('GEOPOS', KEYS[1], id)[1] " +
+            "if pos then redis.call('GEOADD', prefix .. target, pos[1], pos[2], id) end " +
+            "return 1",
+            Long.class);
+
+    // Removes one batch of stale members from every set atomically, so a driver that pings
+    // between the range read and the delete is not dropped by mistake
+    private static final RedisScript<Long> SWEEP_STALE_SCRIPT = new DefaultRedisScript<>(
+            "local stale = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+            "if #stale > 0 then " +
+            "  for _, id in ipairs(stale) do " +
+            "    local partition = redis.call('HGET', KEYS[3], id) " +
+            "    if partition then redis.call('ZREM', ARGV[3] .. partition, id) end " +
+            "  end " +
+            "  redis.call('HDEL', KEYS[3], unpack(stale)) " +
+            "  redis.call('ZREM', KEYS[1], unpack(stale)) " +
+            "  redis.call('ZREM', KEYS[2], unpack(stale)) " +
+            "end " +
+            "return #stale",
+            Long.class);
+
+    // Widens the search ring by ring until K fresh drivers are found or the rings run out.
+    // KEYS = last-seen set, then the geo keys to search; ARGV = lng, lat, k, cutoff, per-key count, radii...
+    // Returns the radius used followed by (id, distance, lng, lat) for each fresh driver.
+    private static final RedisScript<List> ADAPTIVE_SEARCH_SCRIPT = new DefaultRedisScript<>(
+            "local lng, lat, k, cutoff, count = ARGV[1], ARGV[2], tonumber(ARGV[3]), tonumber(ARGV[4]), ARGV[5] " +
+            "local found, radius = {}, '0' " +
+            "for r = 6, #ARGV do " +
+            "  radius, found = ARGV[r], {} " +
+            "  for i = 2, #KEYS do " +
+            "    local hits = redis.call('GEOSEARCH', KEYS[i], 'FROMLONLAT', lng, lat, 'BYRADIUS', radius, 'km', " +
+            "        'ASC', 'COUNT', count, 'WITHCOORD', 'WITHDIST') " +
+            "    for _, hit in ipairs(hits) do " +
+            "      local seen = redis.call('ZSCORE', KEYS[1], hit[1]) " +
+            "      if seen and tonumber(seen) >= cutoff then " +
+            "        found[#found + 1] = hit[1] " +
+            "        found[#found + 1] = hit[2] " +
+            "        found[#found + 1] = hit[3][1] " +
+            "        found[#found + 1] = hit[3][2] " +
+            "      end " +
+            "    end " +
+            "  end " +
+            "  if #found / 4 >= k then break end " +
+            "end " +
+            "table.insert(found, 1, radius) " +
+            "return found",
+            List.class);
+
     @Autowired
     private RedisTemplate<String, String> redisTemplate;
 
+    @Autowired
+    private DriverSpatialIndex driverSpatialIndex;
+
+    @Autowired
+    private DriverRepository driverRepository;
+
+    @Autowired
+    private EtaService etaService;
+
     @Value("${app.feature.redis.enabled:true}")
     private boolean isRedisEnabled;
 
+    @Value("${app.driver-location.stale-after-seconds:300}")
+    private long staleAfterSeconds;
+
+    @Value("${app.driver-location.sweep-batch-size:500}")
+    private int sweepBatchSize;
+
+    @Value("${app.driver-location.adaptive-radii-km:1,2,5,10}")
+    private double[] adaptiveRadiiKm;
+
+    @Value("${app.driver-location.adaptive-max-radius-km:10}")
+    private double adaptiveMaxRadiusKm;
+
+    /**
+     * Partitions are only moved on status/vehicle changes, so reconcile them with the database
+     * once at startup in case changes were made while the service was down.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildPartitions() {
+        if (!isRedisEnabled) return;
+
+        Set<String> available = new HashSet<>();
+        for (Driver driver : driverRepository.findByStatus(Driver.DriverStatus.AVAILABLE)) {
+            available.add(String.valueOf(driver.getId()));
+            repartition(driver);
+        }
+        for (Object member : redisTemplate.opsForHash().keys(DRIVER_PARTITION_KEY)) {
+            if (!available.contains(String.valueOf(member))) {
+                redisTemplate.execute(
+                        REPARTITION_SCRIPT,
+                        List.of(DRIVER_GEO_KEY, DRIVER_PARTITION_KEY),
+                        String.valueOf(member), "", PARTITION_KEY_PREFIX);
+            }
+        }
+        System.out.println("Driver location partitions rebuilt with " + available.size() + " available drivers.");
+    }
+
     public void updateDriverLocation(Long driverId, double lat, double lng) {
+        updateDriverLocations(List.of(new LocationPayload(driverId, null, lat, lng, 0, System.currentTimeMillis())));
+    }
+
+    /**
+     * Writes a whole batch of pings in a single Redis round trip, however many drivers it holds.
+     * Drivers already placed in a vehicle-type partition are moved there as well.
+     */
+    public void updateDriverLocations(Collection<LocationPayload> batch) {
+        if (batch.isEmpty()) return;
+        // The in-process index is kept current even when Redis is switched off
+        for (LocationPayload payload : batch) {
+            driverSpatialIndex.updateLocation(payload.getDriverId(), payload.getLatitude(), payload.getLongitude());
+            etaService.recordPing(payload);
+        }
+
         if (!isRedisEnabled) return;
-        Point point = new Point(lng, lat); // Redis takes Lng first
-        redisTemplate.opsForGeo().add(DRIVER_GEO_KEY, point, String.valueOf(driverId));
-        
-        // TTL for active locations, expires if no update within 5 minutes
-        redisTemplate.expire(DRIVER_GEO_KEY, Duration.ofMinutes(5));
+        List<String> args = new ArrayList<>(2 + batch.size() * 3);
+        args.add(String.valueOf(System.currentTimeMillis()));
+        args.add(PARTITION_KEY_PREFIX);
+        for (LocationPayload payload : batch) {
+            args.add(String.valueOf(payload.getDriverId()));
+            args.add(String.valueOf(payload.getLongitude())); // Redis takes Lng first
+            args.add(String.valueOf(payload.getLatitude()));
+        }
+
+        redisTemplate.execute(
+                UPDATE_LOCATIONS_SCRIPT,
+                List.of(DRIVER_GEO_KEY, DRIVER_LAST_SEEN_KEY, DRIVER_PARTITION_KEY),
+                args.toArray());
+    }
+
+    /**
+     * Syncs both location indexes with the persisted driver. AVAILABLE drivers go into the
+     * partition for their vehicle type; any other status takes them out of the partitions.
+     * Call this after every save that changes a driver's status, vehicle or position.
+     */
+    public void syncDriver(Driver driver) {
+        driverSpatialIndex.updateDriver(driver);
+
+        if (!isRedisEnabled || driver == null || driver.getId() == null) return;
+        repartition(driver);
+    }
+
+    private void repartition(Driver driver) {
+        String partition = driver.getStatus() == Driver.DriverStatus.AVAILABLE
+                ? VehicleType.fromLabelOrDefault(driver.getVehicleType()).name()
+                : "";
+        redisTemplate.execute(
+                REPARTITION_SCRIPT,
+                List.of(DRIVER_GEO_KEY, DRIVER_PARTITION_KEY),
+                String.valueOf(driver.getId()), partition, PARTITION_KEY_PREFIX);
     }
 
     public void removeDriverLocation(Long driverId) {
+        driverSpatialIndex.remove(driverId);
+        etaService.forgetDriver(driverId);
+
         if (!isRedisEnabled) return;
-        redisTemplate.opsForGeo().remove(DRIVER_GEO_KEY, String.valueOf(driverId));
+        String member = String.valueOf(driverId);
+        redisTemplate.execute(
+                REPARTITION_SCRIPT,
+                List.of(DRIVER_GEO_KEY, DRIVER_PARTITION_KEY),
+                member, "", PARTITION_KEY_PREFIX);
+        redisTemplate.opsForGeo().remove(DRIVER_GEO_KEY, member);
+        redisTemplate.opsForZSet().remove(DRIVER_LAST_SEEN_KEY, member);
     }
 
     public List<NearbyDriverDto> getNearbyDrivers(double lat, double lng, double radiusKm) {
+        return getNearbyDrivers(lat, lng, radiusKm, null);
+    }
+
+    /**
+     * Nearest drivers within the radius. When vehicle types are given only the AVAILABLE drivers
+     * in those partitions are searched; otherwise every located driver is a candidate.
+     */
+    public List<NearbyDriverDto> getNearbyDrivers(double lat, double lng, double radiusKm, Collection<VehicleType> vehicleTypes) {
         if (!isRedisEnabled) {
             System.out.println("[REDIS MOCK] Skipping nearby driver search (Redis disabled)");
             return List.of();
@@ -49,26 +252,40 @@ public class DriverLocationService {
         Distance radius = new Distance(radiusKm, RedisGeoCommands.DistanceUnit.KILOMETERS);
         Circle circle = new Circle(center, radius);
 
+        // Over-fetch a little so members still waiting for the sweeper do not shrink the result
         RedisGeoCommands.GeoRadiusCommandArgs args = RedisGeoCommands.GeoRadiusCommandArgs
                 .newGeoRadiusArgs()
                 .includeDistance()
                 .includeCoordinates()
                 .sortAscending()
-                .limit(20);
+                .limit(NEARBY_LIMIT * 2);
 
-        GeoResults<RedisGeoCommands.GeoLocation<String>> results =
-                redisTemplate.opsForGeo().radius(DRIVER_GEO_KEY, circle, args);
+        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> candidates = new ArrayList<>();
+        if (vehicleTypes == null || vehicleTypes.isEmpty()) {
+            addResults(candidates, redisTemplate.opsForGeo().radius(DRIVER_GEO_KEY, circle, args));
+        } else {
+            for (VehicleType type : vehicleTypes) {
+                addResults(candidates, redisTemplate.opsForGeo().radius(partitionKey(type), circle, args));
+            }
+            // Each partition comes back sorted; merge them into one nearest-first list
+            if (vehicleTypes.size() > 1) {
+                candidates.sort(Comparator.comparingDouble(result -> result.getDistance().getValue()));
+            }
+        }
 
-        if (results == null) {
+        if (candidates.isEmpty()) {
             return List.of();
         }
 
-        return results.getContent().stream()
+        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> fresh = excludeStale(candidates);
+
+        return fresh.stream()
+                .limit(NEARBY_LIMIT)
                 .map(result -> {
                     String driverIdStr = result.getContent().getName();
                     double distance = result.getDistance().getValue();
                     Point coords = result.getContent().getPoint();
-                    
+
                     return new NearbyDriverDto(
                             Long.parseLong(driverIdStr),
                             coords.getY(),
@@ -77,4 +294,123 @@ public class DriverLocationService {
                     );
                 }).collect(Collectors.toList());
     }
+
+    /**
+     * Starts with a small ring and widens it (1, 2, 5, 10 km by default) until at least {@code k}
+     * drivers are found or the cap is reached. The whole expansion is one Lua call, so a dense
+     * downtown search stops at the first ring and a sparse suburb still costs a single round trip.
+     */
+    public NearbyDriverSearchDto searchNearbyDriversAdaptive(double lat, double lng, int k, Collection<VehicleType> vehicleTypes) {
+        if (!isRedisEnabled) {
+            System.out.println("[REDIS MOCK] Skipping nearby driver search (Redis disabled)");
+            return new NearbyDriverSearchDto(0, List.of());
+        }
+        int wanted = Math.max(1, Math.min(k, NEARBY_LIMIT));
+
+        List<String> keys = new ArrayList<>();
+        keys.add(DRIVER_LAST_SEEN_KEY);
+        if (vehicleTypes == null || vehicleTypes.isEmpty()) {
+            keys.add(DRIVER_GEO_KEY);
+        } else {
+            for (VehicleType type : vehicleTypes) {
+                keys.add(partitionKey(type));
+            }
+        }
+
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(lng));
+        args.add(String.valueOf(lat));
+        args.add(String.valueOf(wanted));
+        args.add(String.valueOf(staleCutoffMillis()));
+        args.add(String.valueOf(wanted * 2));
+        for (double radius : adaptiveRadiiKm) {
+            if (radius < adaptiveMaxRadiusKm) {
+                args.add(String.valueOf(radius));
+            }
+        }
+        args.add(String.valueOf(adaptiveMaxRadiusKm));
+
+        List<?> reply = redisTemplate.execute(ADAPTIVE_SEARCH_SCRIPT, keys, args.toArray());
+        if (reply == null || reply.isEmpty()) {
+            return new NearbyDriverSearchDto(0, List.of());
+        }
+
+        List<NearbyDriverDto> drivers = new ArrayList<>((reply.size() - 1) / 4);
+        for (int i = 1; i + 3 < reply.size(); i += 4) {
+            drivers.add(new NearbyDriverDto(
+                    Long.parseLong(String.valueOf(reply.get(i))),
+                    Double.parseDouble(String.valueOf(reply.get(i + 3))),
+                    Double.parseDouble(String.valueOf(reply.get(i + 2))),
+                    Double.parseDouble(String.valueOf(reply.get(i + 1)))
+            ));
+        }
+        // Results from several partitions arrive grouped by key
+        if (keys.size() > 2) {
+            drivers.sort(Comparator.comparingDouble(NearbyDriverDto::getDistanceKm));
+        }
+        if (drivers.size() > wanted) {
+            drivers = new ArrayList<>(drivers.subList(0, wanted));
+        }
+
+        return new NearbyDriverSearchDto(Double.parseDouble(String.valueOf(reply.get(0))), drivers);
+    }
+
+    @Scheduled(fixedDelayString = "${app.driver-location.sweep-interval-ms:30000}")
+    public void sweepStaleDrivers() {
+        if (!isRedisEnabled) return;
+
+        String cutoff = String.valueOf(staleCutoffMillis());
+        long removed = 0;
+        while (true) {
+            Long batch = redisTemplate.execute(
+                    SWEEP_STALE_SCRIPT,
+                    List.of(DRIVER_GEO_KEY, DRIVER_LAST_SEEN_KEY, DRIVER_PARTITION_KEY),
+                    cutoff, String.valueOf(sweepBatchSize), PARTITION_KEY_PREFIX);
+            if (batch == null || batch == 0) break;
+            removed += batch;
+            if (batch < sweepBatchSize) break;
+        }
+
+        if (removed > 0) {
+            System.out.println("Driver location sweeper evicted " + removed + " stale drivers.");
+        }
+    }
+
+    private static String partitionKey(VehicleType type) {
+        return PARTITION_KEY_PREFIX + type.name();
+    }
+
+    private static void addResults(List<GeoResult<RedisGeoCommands.GeoLocation<String>>> into,
+                                   GeoResults<RedisGeoCommands.GeoLocation<String>> results) {
+        if (results != null) {
+            into.addAll(results.getContent());
+        }
+    }
+
+    private List<GeoResult<RedisGeoCommands.GeoLocation<String>>> excludeStale(
+            List<GeoResult<RedisGeoCommands.GeoLocation<String>>> candidates) {
+        Object[] members = candidates.stream()
+                .map(result -> result.getContent().getName())
+                .toArray();
+
+        // One ZMSCORE round trip for the whole candidate list
+        List<Double> lastSeen = redisTemplate.opsForZSet().score(DRIVER_LAST_SEEN_KEY, members);
+        if (lastSeen == null) {
+            return candidates;
+        }
+
+        long cutoff = staleCutoffMillis();
+        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> fresh = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            Double seenAt = lastSeen.get(i);
+            if (seenAt != null && seenAt >= cutoff) {
+                fresh.add(candidates.get(i));
+            }
+        }
+        return fresh;
+    }
+
+    private long staleCutoffMillis() {
+        return System.currentTimeMillis() - staleAfterSeconds * 1000;
+    }
 }
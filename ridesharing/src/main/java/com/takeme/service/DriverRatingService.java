@@ -0,0 +1,154 @@
+package com.takeme.service;
+
+import com.takeme.model.Driver;
+import com.takeme.model.Review;
+import com.takeme.model.Ride;
+import com.takeme.repository.ReviewRepository;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+
+/**
+ * Driver ratings as a running sum and count. Every completed ride has one rating slot
+ * (Ride.rating); rating a ride, re-rating it or reviewing it all go through {@link #rateRide},
+ * which swaps the slot and shifts the driver's sum by the difference. The cost of a rating is
+ * two single-document writes no matter how many rides the driver has.
+ */
+@Service
+public class DriverRatingService {
+
+    private static final String MIGRATIONS = "migrations";
+    private static final String COUNTER_MIGRATION = "driver-rating-counters";
+    private static final int MIGRATION_PAGE_SIZE = 1000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ReviewRepository reviewRepository;
+
+    @Autowired
+    private DriverLeaderboard driverLeaderboard;
+
+    /**
+     * Sets the ride's rating. A first rating adds to the driver's count, an edit only moves the
+     * sum, and repeating the same rating changes nothing. Returns the ride with the new rating.
+     */
+    public Ride rateRide(Long rideId, int rating) {
+        if (rating < 1 || rating > 5) {
+            throw new RuntimeException("Rating must be between 1 and 5");
+        }
+
+        // Swap the slot and read the old value in one step, so concurrent edits of a ride serialize
+        Query completedRide = new Query(Criteria.where("id").is(rideId).and("status").is(Ride.RideStatus.COMPLETED));
+        Ride before = mongoTemplate.findAndModify(completedRide, new Update().set("rating", rating),
+            FindAndModifyOptions.options().returnNew(false), Ride.class);
+        if (before == null) {
+            if (!mongoTemplate.exists(new Query(Criteria.where("id").is(rideId)), Ride.class)) {
+                throw new RuntimeException("Ride not found");
+            }
+            throw new RuntimeException("Only completed rides can be rated");
+        }
+
+        Integer previous = before.getRating();
+        before.setRating(rating);
+        if (before.getDriverId() == null || (previous != null && previous == rating)) {
+            return before;
+        }
+
+        long sumDelta = previous == null ? rating : rating - previous;
+        int countDelta = previous == null ? 1 : 0;
+        Driver driver = applyDelta(before.getDriverId(), sumDelta, countDelta);
+        if (driver != null) {
+            driverLeaderboard.update(driver);
+        }
+        return before;
+    }
+
+    /**
+     * One-time migration to the counters, run while the context starts and so before any rating
+     * can be submitted. Ratings that only exist as a review (the old review flow never touched the
+     * ride) are first copied onto their ride, newest review winning, so a later re-rating of that
+     * ride is an edit rather than a new rating. Then every driver's counters are rebuilt from the
+     * rated rides. A marker document records completion; a run that dies midway simply runs again.
+     */
+    @PostConstruct
+    public void migrateCounters() {
+        Query done = new Query(Criteria.where("_id").is(COUNTER_MIGRATION));
+        if (mongoTemplate.exists(done, MIGRATIONS)) return;
+
+        int copied = 0;
+        Pageable page = PageRequest.of(0, MIGRATION_PAGE_SIZE, Sort.by(Sort.Direction.DESC, "id"));
+        Page<Review> reviews;
+        do {
+            reviews = reviewRepository.findAll(page);
+            for (Review review : reviews) {
+                Query unrated = new Query(Criteria.where("id").is(review.getRideId())
+                    .and("status").is(Ride.RideStatus.COMPLETED)
+                    .and("rating").is(null));
+                copied += (int) mongoTemplate.updateFirst(unrated, new Update().set("rating", review.getRating()), Ride.class)
+                    .getModifiedCount();
+            }
+            page = reviews.nextPageable();
+        } while (reviews.hasNext());
+
+        mongoTemplate.updateMulti(new Query(), new Update()
+            .set("ratingSum", 0L)
+            .set("ratingCount", 0)
+            .set("rating", 0.0), Driver.class);
+
+        Aggregation ratedRides = Aggregation.newAggregation(
+            Aggregation.match(Criteria.where("status").is(Ride.RideStatus.COMPLETED)
+                .and("rating").ne(null)
+                .and("driverId").ne(null)),
+            Aggregation.group("driverId").sum("rating").as("sum").count().as("count"));
+
+        int rated = 0;
+        for (Document row : mongoTemplate.aggregate(ratedRides, Ride.class, Document.class)) {
+            long sum = ((Number) row.get("sum")).longValue();
+            int count = ((Number) row.get("count")).intValue();
+            Update counters = new Update()
+                .set("ratingSum", sum)
+                .set("ratingCount", count)
+                .set("rating", (double) sum / count);
+            rated += (int) mongoTemplate.updateFirst(new Query(Criteria.where("id").is(row.get("_id"))), counters, Driver.class)
+                .getModifiedCount();
+        }
+
+        mongoTemplate.save(new Document("_id", COUNTER_MIGRATION).append("completedAt", new Date()), MIGRATIONS);
+        System.out.println("Rating counters migrated: " + copied + " review ratings copied to rides, "
+            + rated + " drivers rated.");
+    }
+
+    // One pipeline update: bump the counters, then recompute the average from the new values
+    private Driver applyDelta(Long driverId, long sumDelta, int countDelta) {
+        AggregationUpdate update = AggregationUpdate.update()
+            .set("ratingSum").toValue(ArithmeticOperators.valueOf(
+                ConditionalOperators.ifNull("ratingSum").then(0)).add(sumDelta))
+            .set("ratingCount").toValue(ArithmeticOperators.valueOf(
+                ConditionalOperators.ifNull("ratingCount").then(0)).add(countDelta))
+            .set("rating").toValue(ConditionalOperators
+                .when(Criteria.where("ratingCount").gt(0))
+                .then(ArithmeticOperators.valueOf("ratingSum").divideBy("ratingCount"))
+                .otherwise(0.0));
+
+        return mongoTemplate.findAndModify(new Query(Criteria.where("id").is(driverId)), update,
+            FindAndModifyOptions.options().returnNew(true), Driver.class);
+    }
+}
@@ -1,11 +1,18 @@
 package com.takeme.service;
 
+import com.takeme.dto.NearbyDriverDto;
 import com.takeme.model.Driver;
 import com.takeme.repository.DriverRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -14,6 +21,18 @@ public class DriverService {
     @Autowired
     private DriverRepository driverRepository;
 
+    @Autowired
+    private DriverSpatialIndex driverSpatialIndex;
+
+    @Autowired
+    private DriverLocationService driverLocationService;
+    
+    @Autowired
+    private PlatformMetricsRegistry platformMetrics;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     public List<Driver> getAvailableDrivers() {
         return driverRepository.findByStatus(Driver.DriverStatus.AVAILABLE);
     }
@@ -21,39 +40,37 @@ public class DriverService {
     public List<Driver> getNearbyDrivers(Double latitude, Double longitude) {
         // Default radius 5.0 km
         double radiusKm = 5.0;
-        
-        List<Driver> availableDrivers = driverRepository.findByStatus(Driver.DriverStatus.AVAILABLE);
 
         if (latitude == null || longitude == null) {
              // If no coords provided, just return some available ones
-             return availableDrivers.stream()
+             return driverRepository.findByStatus(Driver.DriverStatus.AVAILABLE).stream()
                 .limit(10)
                 .collect(Collectors.toList());
         }
         
-        return availableDrivers.stream()
-            .filter(d -> d.getCurrentLatitude() != null && d.getCurrentLongitude() != null)
-            .filter(d -> {
-                double distance = calculateDistance(
-                    latitude, longitude,
-                    d.getCurrentLatitude(), d.getCurrentLongitude()
-                );
-                return distance <= radiusKm;
-            })
-            .collect(Collectors.toList());
+        return getNearbyDrivers(latitude, longitude, radiusKm);
     }
-    
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371; // Radius of the earth in km
-        
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        
-        return R * c;
+
+    public List<Driver> getNearbyDrivers(double latitude, double longitude, double radiusKm) {
+        // Only the grid cells around the pickup are visited, then the matching drivers are loaded in one query
+        List<Long> nearbyIds = driverSpatialIndex.findAvailableWithin(latitude, longitude, radiusKm).stream()
+            .map(NearbyDriverDto::getDriverId)
+            .collect(Collectors.toList());
+
+        if (nearbyIds.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Driver> driversById = new HashMap<>();
+        for (Driver driver : driverRepository.findAllById(nearbyIds)) {
+            driversById.put(driver.getId(), driver);
+        }
+
+        // Keep the nearest-first order from the index and drop anyone whose status moved on since
+        return nearbyIds.stream()
+            .map(driversById::get)
+            .filter(d -> d != null && d.getStatus() == Driver.DriverStatus.AVAILABLE)
+            .collect(Collectors.toList());
     }
 
     public Driver getDriverById(Long id) {
@@ -66,8 +83,12 @@ public class DriverService {
         
         try {
             Driver.DriverStatus status = Driver.DriverStatus.valueOf(statusStr.toUpperCase());
+            Driver.DriverStatus previousStatus = driver.getStatus();
             driver.setStatus(status);
-            return driverRepository.save(driver);
+            mongoTemplate.updateFirst(new Query(Criteria.where("id").is(id)), new Update().set("status", status), Driver.class);
+            driverLocationService.syncDriver(driver);
+            platformMetrics.driverStatusChanged(previousStatus, status);
+            return driver;
         } catch (IllegalArgumentException e) {
             throw new RuntimeException("Invalid status: " + statusStr);
         }
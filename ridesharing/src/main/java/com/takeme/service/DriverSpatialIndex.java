@@ -0,0 +1,212 @@
+package com.takeme.service;
+
+import com.takeme.dto.NearbyDriverDto;
+import com.takeme.model.Driver;
+import com.takeme.repository.DriverRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory lat/lng grid of driver positions. Only AVAILABLE drivers occupy grid
+ * cells, so a radius query visits the handful of cells around the rider and costs
+ * O(nearby available drivers) instead of a full scan of the fleet.
+ */
+@Service
+public class DriverSpatialIndex {
+
+    private static final double KM_PER_DEGREE = 111.32;
+
+    @Autowired
+    private DriverRepository driverRepository;
+
+    @Autowired
+    private SurgePricingService surgePricingService;
+
+    // 0.01 degrees is roughly 1.1 km, so a 5 km search touches about a 10x10 block of cells
+    @Value("${app.driver-index.cell-size-degrees:0.01}")
+    private double cellSizeDegrees;
+
+    private final ConcurrentHashMap<Long, IndexedDriver> drivers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Set<Long>> cells = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<CandidateColumns> SCRATCH = ThreadLocal.withInitial(CandidateColumns::new);
+
+    // positioned is false for an AVAILABLE driver that has not sent a location yet; such an entry
+    // carries the status only and sits in no grid cell until the first ping places it
+    private record IndexedDriver(double latitude, double longitude, long cell, boolean available, boolean positioned) {}
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildFromRepository() {
+        drivers.clear();
+        cells.clear();
+
+        List<Driver> availableDrivers = driverRepository.findByStatus(Driver.DriverStatus.AVAILABLE);
+        for (Driver driver : availableDrivers) {
+            updateDriver(driver);
+        }
+        System.out.println("Driver spatial index rebuilt with " + drivers.size() + " available drivers.");
+    }
+
+    /**
+     * Moves a driver to a new position, keeping whatever availability the index already knows about
+     * (including an AVAILABLE status synced before the driver's first position).
+     */
+    public void updateLocation(Long driverId, double latitude, double longitude) {
+        if (driverId == null) return;
+        drivers.compute(driverId, (id, previous) -> {
+            boolean available = previous != null && previous.available();
+            return place(id, previous, latitude, longitude, available);
+        });
+    }
+
+    /**
+     * Syncs the index with the persisted driver (position and status).
+     */
+    public void updateDriver(Driver driver) {
+        if (driver == null || driver.getId() == null) return;
+        boolean available = driver.getStatus() == Driver.DriverStatus.AVAILABLE;
+
+        drivers.compute(driver.getId(), (id, previous) -> {
+            if (driver.getCurrentLatitude() != null && driver.getCurrentLongitude() != null) {
+                return place(id, previous, driver.getCurrentLatitude(), driver.getCurrentLongitude(), available);
+            }
+            if (previous != null && previous.positioned()) {
+                return place(id, previous, previous.latitude(), previous.longitude(), available);
+            }
+            // No known position yet: remember an AVAILABLE status for the first ping, nothing to place
+            return available ? new IndexedDriver(Double.NaN, Double.NaN, 0L, true, false) : null;
+        });
+    }
+
+    public void remove(Long driverId) {
+        if (driverId == null) return;
+        drivers.computeIfPresent(driverId, (id, previous) -> {
+            if (previous.available() && previous.positioned()) {
+                leaveCell(previous.cell(), id);
+            }
+            surgePricingService.removeDriver(id);
+            return null;
+        });
+    }
+
+    public boolean isAvailable(Long driverId) {
+        IndexedDriver entry = driverId != null ? drivers.get(driverId) : null;
+        return entry != null && entry.available();
+    }
+
+    /**
+     * Available drivers within the radius, nearest first.
+     */
+    public List<NearbyDriverDto> findAvailableWithin(double latitude, double longitude, double radiusKm) {
+        double latSpan = radiusKm / KM_PER_DEGREE;
+        double lngSpan = radiusKm / (KM_PER_DEGREE * Math.max(Math.cos(Math.toRadians(latitude)), 0.01));
+
+        int minLat = cellIndex(latitude - latSpan);
+        int maxLat = cellIndex(latitude + latSpan);
+        int minLng = cellIndex(longitude - lngSpan);
+        int maxLng = cellIndex(longitude + lngSpan);
+
+        // Gather the candidates into primitive columns, then rank them in one batch
+        CandidateColumns columns = SCRATCH.get();
+        int count = 0;
+        for (int latIdx = minLat; latIdx <= maxLat; latIdx++) {
+            for (int lngIdx = minLng; lngIdx <= maxLng; lngIdx++) {
+                Set<Long> members = cells.get(cellKey(latIdx, lngIdx));
+                if (members == null) continue;
+
+                for (Long driverId : members) {
+                    IndexedDriver entry = drivers.get(driverId);
+                    if (entry == null || !entry.available() || !entry.positioned()) continue;
+
+                    columns.ensureCapacity(count + 1);
+                    columns.ids[count] = driverId;
+                    columns.lats[count] = entry.latitude();
+                    columns.lngs[count] = entry.longitude();
+                    count++;
+                }
+            }
+        }
+
+        int matched = GeoMath.withinRadius(latitude, longitude, columns.lats, columns.lngs, count,
+                radiusKm, columns.matches, columns.distances);
+
+        List<NearbyDriverDto> result = new ArrayList<>(matched);
+        for (int m = 0; m < matched; m++) {
+            int i = columns.matches[m];
+            result.add(new NearbyDriverDto(columns.ids[i], columns.lats[i], columns.lngs[i], columns.distances[m]));
+        }
+        result.sort(Comparator.comparingDouble(NearbyDriverDto::getDistanceKm));
+        return result;
+    }
+
+    public int size() {
+        return drivers.size();
+    }
+
+    // Called inside drivers.compute(), so moves for a single driver never interleave
+    private IndexedDriver place(Long driverId, IndexedDriver previous, double latitude, double longitude, boolean available) {
+        long cell = cellKey(cellIndex(latitude), cellIndex(longitude));
+
+        boolean wasIndexed = previous != null && previous.available() && previous.positioned();
+        if (wasIndexed && (!available || previous.cell() != cell)) {
+            leaveCell(previous.cell(), driverId);
+        }
+        if (available && (!wasIndexed || previous.cell() != cell)) {
+            enterCell(cell, driverId);
+        }
+        surgePricingService.updateDriverSupply(driverId, latitude, longitude, available);
+        return new IndexedDriver(latitude, longitude, cell, available, true);
+    }
+
+    private void enterCell(long cell, Long driverId) {
+        cells.compute(cell, (key, members) -> {
+            Set<Long> set = members != null ? members : ConcurrentHashMap.newKeySet();
+            set.add(driverId);
+            return set;
+        });
+    }
+
+    private void leaveCell(long cell, Long driverId) {
+        cells.computeIfPresent(cell, (key, members) -> {
+            members.remove(driverId);
+            return members.isEmpty() ? null : members;
+        });
+    }
+
+    private int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / cellSizeDegrees);
+    }
+
+    private static long cellKey(int latIdx, int lngIdx) {
+        return ((long) latIdx << 32) | (lngIdx & 0xffffffffL);
+    }
+
+    // Per-thread scratch columns, grown as needed and reused across queries
+    private static final class CandidateColumns {
+        long[] ids = new long[256];
+        double[] lats = new double[256];
+        double[] lngs = new double[256];
+        int[] matches = new int[256];
+        double[] distances = new double[256];
+
+        void ensureCapacity(int size) {
+            if (size <= ids.length) return;
+            int capacity = Math.max(size, ids.length * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            lats = Arrays.copyOf(lats, capacity);
+            lngs = Arrays.copyOf(lngs, capacity);
+            matches = new int[capacity];
+            distances = new double[capacity];
+        }
+    }
+}
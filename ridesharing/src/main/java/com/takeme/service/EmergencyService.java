@@ -21,6 +21,9 @@ public class EmergencyService {
     @Autowired
     private NotificationService notificationService;
     
+    @Autowired
+    private PlatformMetricsRegistry platformMetrics;
+    
     // Emergency Contacts
     public List<EmergencyContact> getEmergencyContacts(Long userId) {
         return contactRepository.findByUserIdAndActive(userId, true);
@@ -65,6 +68,7 @@ public class EmergencyService {
         incident.setStatus(Incident.IncidentStatus.REPORTED);
         
         incident = incidentRepository.save(incident);
+        platformMetrics.incidentReported();
         
         // Notify user
         notificationService.createNotification(
@@ -100,6 +104,7 @@ public class EmergencyService {
         incident.setStatus(Incident.IncidentStatus.REPORTED);
         
         incidentRepository.save(incident);
+        platformMetrics.incidentReported();
         
         // Send critical notification
         notificationService.createNotification(
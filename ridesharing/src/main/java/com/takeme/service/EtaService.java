@@ -0,0 +1,300 @@
+package com.takeme.service;
+
+import com.takeme.dto.LocationPayload;
+import com.takeme.dto.NearbyDriverDto;
+import com.takeme.model.Ride;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Learned travel speeds per grid cell and hour of day. Speeds are stored as "effective" km/h of
+ * straight-line progress, so an ETA is simply straight-line distance over the speeds of the cells
+ * the segment crosses. Completed rides and consecutive driver pings refresh the table with an
+ * exponentially weighted average; the in-memory table is rebuilt from recent rides at startup.
+ */
+@Service
+public class EtaService {
+
+    private static final int HOURS = 24;
+
+    // Slots per cell: one per hour of day plus an all-day average used as fallback
+    private static final int SLOTS = HOURS + 1;
+    private static final int ALL_DAY = HOURS;
+
+    private static final int MAX_PATH_SAMPLES = 16;
+
+    // Ping pairs outside these bounds are GPS noise or a parked car, not traffic
+    private static final double MIN_PING_SPEED_KMH = 3;
+    private static final double MAX_PING_SPEED_KMH = 120;
+    private static final long MIN_PING_GAP_MS = 5_000;
+    private static final long MAX_PING_GAP_MS = 300_000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // 0.02 degrees is roughly 2.2 km
+    @Value("${app.eta.cell-size-degrees:0.02}")
+    private double cellSizeDegrees;
+
+    @Value("${app.eta.default-speed-kmh:30}")
+    private double defaultSpeedKmh;
+
+    // Road distance over straight-line distance, used to turn ping (road) speeds into effective speeds
+    @Value("${app.eta.road-factor:1.3}")
+    private double roadFactor;
+
+    @Value("${app.eta.smoothing:0.2}")
+    private double smoothing;
+
+    @Value("${app.eta.bootstrap-rides:5000}")
+    private int bootstrapRides;
+
+    private volatile SpeedTable table = new SpeedTable(1024);
+
+    private final ConcurrentHashMap<Long, LocationPayload> lastPings = new ConcurrentHashMap<>();
+
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildFromRecentRides() {
+        Query query = new Query(Criteria.where("status").is(Ride.RideStatus.COMPLETED)
+                .and("startedAt").ne(null)
+                .and("completedAt").ne(null))
+                .with(Sort.by(Sort.Direction.DESC, "completedAt"))
+                .limit(bootstrapRides);
+
+        List<Ride> rides = mongoTemplate.find(query, Ride.class);
+        // Oldest first so the most recent rides carry the most weight
+        for (int i = rides.size() - 1; i >= 0; i--) {
+            recordCompletedRide(rides.get(i));
+        }
+        System.out.println("ETA grid rebuilt from " + rides.size() + " completed rides (" + table.size + " cells).");
+    }
+
+    public void recordCompletedRide(Ride ride) {
+        if (ride.getStartedAt() == null || ride.getCompletedAt() == null || ride.getDistance() == null
+                || ride.getPickupLatitude() == null || ride.getDropoffLatitude() == null) {
+            return;
+        }
+        double hours = Duration.between(ride.getStartedAt(), ride.getCompletedAt()).toMillis() / 3_600_000.0;
+        if (hours <= 0 || ride.getDistance() <= 0) return;
+
+        double speed = ride.getDistance() / hours;
+        if (speed > MAX_PING_SPEED_KMH) return;
+
+        // Credit every cell along the straight line between pickup and dropoff
+        int hour = ride.getStartedAt().getHour();
+        double fromLat = ride.getPickupLatitude(), fromLng = ride.getPickupLongitude();
+        double toLat = ride.getDropoffLatitude(), toLng = ride.getDropoffLongitude();
+        int steps = pathSamples(ride.getDistance());
+        long previousCell = Long.MIN_VALUE;
+        for (int s = 0; s < steps; s++) {
+            double t = (s + 0.5) / steps;
+            long cell = cellKey(fromLat + (toLat - fromLat) * t, fromLng + (toLng - fromLng) * t);
+            if (cell != previousCell) {
+                recordSample(cell, hour, speed);
+                previousCell = cell;
+            }
+        }
+    }
+
+    /**
+     * Learns from the gap between a driver's previous ping and this one.
+     */
+    public void recordPing(LocationPayload ping) {
+        if (ping.getDriverId() == null) return;
+        LocationPayload previous = lastPings.put(ping.getDriverId(), ping);
+        if (previous == null) return;
+
+        long gapMs = ping.getTimestamp() - previous.getTimestamp();
+        if (gapMs < MIN_PING_GAP_MS || gapMs > MAX_PING_GAP_MS) return;
+
+        double km = GeoMath.haversineKm(previous.getLatitude(), previous.getLongitude(),
+                ping.getLatitude(), ping.getLongitude());
+        double roadSpeed = km / (gapMs / 3_600_000.0);
+        if (roadSpeed < MIN_PING_SPEED_KMH || roadSpeed > MAX_PING_SPEED_KMH) return;
+
+        int hour = Instant.ofEpochMilli(ping.getTimestamp()).atZone(zone).getHour();
+        long cell = cellKey((previous.getLatitude() + ping.getLatitude()) / 2,
+                (previous.getLongitude() + ping.getLongitude()) / 2);
+        recordSample(cell, hour, roadSpeed / roadFactor);
+    }
+
+    public void forgetDriver(Long driverId) {
+        if (driverId != null) {
+            lastPings.remove(driverId);
+        }
+    }
+
+    /**
+     * Minutes from each of the first {@code count} origins to the destination, written to
+     * {@code outMinutes}. Allocates nothing per origin.
+     */
+    public void etaMinutes(double toLat, double toLng, double[] fromLats, double[] fromLngs, int count, double[] outMinutes) {
+        GeoMath.haversineKm(toLat, toLng, fromLats, fromLngs, count, outMinutes);
+
+        SpeedTable snapshot = table;
+        int hour = LocalDateTime.now(zone).getHour();
+        for (int i = 0; i < count; i++) {
+            outMinutes[i] = travelMinutes(snapshot, fromLats[i], fromLngs[i], toLat, toLng, outMinutes[i], hour);
+        }
+    }
+
+    /**
+     * Fills in {@code etaMinutes} on each driver for the trip to the pickup point.
+     */
+    public void annotate(List<NearbyDriverDto> drivers, double pickupLat, double pickupLng) {
+        int count = drivers.size();
+        if (count == 0) return;
+
+        double[] lats = new double[count];
+        double[] lngs = new double[count];
+        double[] minutes = new double[count];
+        for (int i = 0; i < count; i++) {
+            lats[i] = drivers.get(i).getLatitude();
+            lngs[i] = drivers.get(i).getLongitude();
+        }
+
+        etaMinutes(pickupLat, pickupLng, lats, lngs, count, minutes);
+        for (int i = 0; i < count; i++) {
+            drivers.get(i).setEtaMinutes(minutes[i]);
+        }
+    }
+
+    /**
+     * Whole minutes for a trip, never less than one.
+     */
+    public int estimateTripMinutes(double fromLat, double fromLng, double toLat, double toLng) {
+        double km = GeoMath.haversineKm(fromLat, fromLng, toLat, toLng);
+        double minutes = travelMinutes(table, fromLat, fromLng, toLat, toLng, km, LocalDateTime.now(zone).getHour());
+        return Math.max(1, (int) Math.ceil(minutes));
+    }
+
+    public int cellCount() {
+        return table.size;
+    }
+
+    private double travelMinutes(SpeedTable snapshot, double fromLat, double fromLng,
+                                 double toLat, double toLng, double km, int hour) {
+        if (km <= 0) return 0;
+
+        int steps = pathSamples(km);
+        double segmentKm = km / steps;
+        double hours = 0;
+        for (int s = 0; s < steps; s++) {
+            double t = (s + 0.5) / steps;
+            long cell = cellKey(fromLat + (toLat - fromLat) * t, fromLng + (toLng - fromLng) * t);
+            hours += segmentKm / speedFor(snapshot, cell, hour);
+        }
+        return hours * 60;
+    }
+
+    private double speedFor(SpeedTable snapshot, long cell, int hour) {
+        int slot = snapshot.find(cell);
+        if (slot >= 0) {
+            float hourly = snapshot.speeds[slot * SLOTS + hour];
+            if (hourly > 0) return hourly;
+            float allDay = snapshot.speeds[slot * SLOTS + ALL_DAY];
+            if (allDay > 0) return allDay;
+        }
+        return defaultSpeedKmh / roadFactor;
+    }
+
+    private synchronized void recordSample(long cell, int hour, double speed) {
+        SpeedTable current = table;
+        if ((current.size + 1) * 2 > current.keys.length) {
+            current = current.grow();
+            table = current;
+        }
+        int slot = current.findOrInsert(cell);
+        blend(current.speeds, slot * SLOTS + hour, speed);
+        blend(current.speeds, slot * SLOTS + ALL_DAY, speed);
+    }
+
+    private void blend(float[] speeds, int index, double sample) {
+        float previous = speeds[index];
+        speeds[index] = previous == 0 ? (float) sample : (float) (previous + smoothing * (sample - previous));
+    }
+
+    private int pathSamples(double km) {
+        double cellKm = cellSizeDegrees * 111.32;
+        return (int) Math.max(1, Math.min(MAX_PATH_SAMPLES, Math.ceil(km / cellKm)));
+    }
+
+    private long cellKey(double lat, double lng) {
+        int latIdx = (int) Math.floor(lat / cellSizeDegrees);
+        int lngIdx = (int) Math.floor(lng / cellSizeDegrees);
+        return ((long) latIdx << 32) | (lngIdx & 0xffffffffL);
+    }
+
+    /**
+     * Open-addressed cell table: {@code keys[i]} is a packed cell and its speeds live at
+     * {@code speeds[i * SLOTS .. i * SLOTS + 24]} (0 = no data yet). Only mutated under the
+     * service lock; readers work on whatever snapshot they picked up.
+     */
+    private static final class SpeedTable {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        final long[] keys;
+        final float[] speeds;
+        final int mask;
+        int size;
+
+        SpeedTable(int capacity) {
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            speeds = new float[capacity * SLOTS];
+            mask = capacity - 1;
+        }
+
+        int find(long key) {
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) return i;
+                if (k == EMPTY) return -1;
+            }
+        }
+
+        int findOrInsert(long key) {
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) return i;
+                if (k == EMPTY) {
+                    keys[i] = key;
+                    size++;
+                    return i;
+                }
+            }
+        }
+
+        SpeedTable grow() {
+            SpeedTable bigger = new SpeedTable(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == EMPTY) continue;
+                int slot = bigger.findOrInsert(keys[i]);
+                System.arraycopy(speeds, i * SLOTS, bigger.speeds, slot * SLOTS, SLOTS);
+            }
+            return bigger;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.takeme.service;
+
+import com.takeme.dto.FareEstimateRequest;
+import com.takeme.dto.FareQuoteDto;
+import com.takeme.model.VehicleType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves a trip (distance, learned trip time, surge at the pickup) and prices it with the
+ * {@link PricingEngine}. Resolved trips (distance and learned trip time) are memoized in a bounded
+ * LRU keyed on rounded coordinates, distance and hour, so dragging a pin around the same spot is
+ * answered from memory. The fare itself is always computed from the current rate card with the live
+ * surge multiplier, exactly as booking does, so an estimate and the booked fare round the same way.
+ */
+@Service
+public class FareQuoteService {
+
+    private static final long NO_COORDINATE = Long.MIN_VALUE;
+
+    @Autowired
+    private PricingEngine pricingEngine;
+
+    @Autowired
+    private EtaService etaService;
+
+    @Autowired
+    private SurgePricingService surgePricingService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.pricing.quote-cache-size:10000}")
+    private int quoteCacheSize;
+
+    // 3 decimals is about 110 m
+    @Value("${app.pricing.quote-cache-precision:3}")
+    private int coordinatePrecision;
+
+    @Value("${app.pricing.max-batch-size:100}")
+    private int maxBatchSize;
+
+    private Map<QuoteKey, Trip> quoteCache;
+    private double coordinateScale;
+
+    private Counter cacheHits;
+    private Counter cacheMisses;
+
+    private record QuoteKey(long pickupLat, long pickupLng, long dropoffLat, long dropoffLng, long distance, int hour) {}
+
+    private record Trip(double distanceKm, Integer durationMinutes) {}
+
+    @PostConstruct
+    public void init() {
+        coordinateScale = Math.pow(10, coordinatePrecision);
+
+        // Access-ordered LinkedHashMap; every access reorders, so all use is under its own lock
+        quoteCache = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<QuoteKey, Trip> eldest) {
+                return size() > quoteCacheSize;
+            }
+        };
+
+        cacheHits = Counter.builder("fare.quote.cache.hits")
+                .description("Fare quotes whose trip was served from the memoized quote cache")
+                .register(meterRegistry);
+        cacheMisses = Counter.builder("fare.quote.cache.misses")
+                .description("Fare quotes whose trip was resolved because no cached one matched")
+                .register(meterRegistry);
+        Gauge.builder("fare.quote.cache.size", this, service -> service.cacheSize())
+                .register(meterRegistry);
+    }
+
+    public FareQuoteDto quote(FareEstimateRequest request) {
+        return quote(request, VehicleType.fromLabelOrDefault(request.getVehicleType()));
+    }
+
+    /**
+     * Prices the same trip for every vehicle type, so the booking screen needs one call instead of one per type.
+     */
+    public List<FareQuoteDto> quoteAllVehicles(FareEstimateRequest request) {
+        List<FareQuoteDto> quotes = new ArrayList<>(VehicleType.values().length);
+        for (VehicleType type : VehicleType.values()) {
+            quotes.add(quote(request, type));
+        }
+        return quotes;
+    }
+
+    /**
+     * Prices many trips in one call. Entries that cannot be priced (no distance and no coordinates) come back as null.
+     */
+    public List<FareQuoteDto> quoteBatch(List<FareEstimateRequest> requests) {
+        if (requests.size() > maxBatchSize) {
+            throw new IllegalArgumentException("At most " + maxBatchSize + " trips can be priced per request");
+        }
+        List<FareQuoteDto> quotes = new ArrayList<>(requests.size());
+        for (FareEstimateRequest request : requests) {
+            quotes.add(canPrice(request) ? quote(request) : null);
+        }
+        return quotes;
+    }
+
+    public int cacheSize() {
+        synchronized (quoteCache) {
+            return quoteCache.size();
+        }
+    }
+
+    private FareQuoteDto quote(FareEstimateRequest request, VehicleType type) {
+        LocalDateTime now = LocalDateTime.now();
+        QuoteKey key = keyFor(request, now.getHour());
+
+        Trip trip;
+        synchronized (quoteCache) {
+            trip = quoteCache.get(key);
+        }
+        if (trip != null) {
+            cacheHits.increment();
+        } else {
+            cacheMisses.increment();
+            trip = resolveTrip(request);
+            synchronized (quoteCache) {
+                quoteCache.put(key, trip);
+            }
+        }
+
+        double surge = request.hasCoordinates()
+                ? surgePricingService.multiplierAt(request.getPickupLatitude(), request.getPickupLongitude())
+                : 1.0;
+        // Same call RideService.createRide makes, so the fare is rounded once, after surge
+        return pricingEngine.quote(type, trip.distanceKm(), trip.durationMinutes(), now, surge);
+    }
+
+    private QuoteKey keyFor(FareEstimateRequest request, int hour) {
+        // An explicit distance overrides the straight-line one, so it is part of the key to 100 m either way
+        long distance = request.getDistance() != null ? Math.round(request.getDistance() * 10) : NO_COORDINATE;
+        if (request.hasCoordinates()) {
+            return new QuoteKey(
+                    round(request.getPickupLatitude()), round(request.getPickupLongitude()),
+                    round(request.getDropoffLatitude()), round(request.getDropoffLongitude()),
+                    distance, hour);
+        }
+        return new QuoteKey(NO_COORDINATE, NO_COORDINATE, NO_COORDINATE, NO_COORDINATE, distance, hour);
+    }
+
+    private long round(double degrees) {
+        return Math.round(degrees * coordinateScale);
+    }
+
+    private boolean canPrice(FareEstimateRequest request) {
+        return request != null && (request.getDistance() != null || request.hasCoordinates());
+    }
+
+    private Trip resolveTrip(FareEstimateRequest request) {
+        Double distance = request.getDistance();
+        Integer duration = null;
+
+        // With coordinates we can fill in the distance and quote a learned trip time
+        if (request.hasCoordinates()) {
+            if (distance == null) {
+                distance = GeoMath.haversineKm(request.getPickupLatitude(), request.getPickupLongitude(),
+                        request.getDropoffLatitude(), request.getDropoffLongitude());
+            }
+            duration = etaService.estimateTripMinutes(request.getPickupLatitude(), request.getPickupLongitude(),
+                    request.getDropoffLatitude(), request.getDropoffLongitude());
+        }
+
+        if (distance == null) {
+            throw new IllegalArgumentException("Distance is required for fare estimation");
+        }
+        return new Trip(distance, duration);
+    }
+}
@@ -1,12 +1,19 @@
 package com.takeme.service;
 
 import com.google.firebase.messaging.*;
+import com.takeme.model.Driver;
+import com.takeme.model.Rider;
 import com.takeme.repository.DriverRepository;
 import com.takeme.repository.RiderRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -22,6 +29,9 @@ public class FcmNotificationService {
     @Autowired
     private DriverRepository driverRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     public void sendPushNotification(String targetToken, String title, String body, Map<String, String> data) {
         if (targetToken == null || targetToken.trim().isEmpty()) {
             System.out.println("[FCM Mock] Request blocked -> FCM token missing.");
@@ -57,14 +67,14 @@ public class FcmNotificationService {
                 System.out.println("[FCM] Target token is invalid or unregistered (" + code + "). Pruning from DB: " + targetToken);
                 
                 riderRepository.findByFcmToken(targetToken).ifPresent(rider -> {
-                    rider.setFcmToken(null);
-                    riderRepository.save(rider);
+                    mongoTemplate.updateFirst(new Query(Criteria.where("id").is(rider.getId())),
+                            new Update().unset("fcmToken").set("updatedAt", LocalDateTime.now()), Rider.class);
                     System.out.println("[FCM] Pruned dead token from Rider: " + rider.getId());
                 });
                 
                 driverRepository.findByFcmToken(targetToken).ifPresent(driver -> {
-                    driver.setFcmToken(null);
-                    driverRepository.save(driver);
+                    mongoTemplate.updateFirst(new Query(Criteria.where("id").is(driver.getId())),
+                            new Update().unset("fcmToken"), Driver.class);
                     System.out.println("[FCM] Pruned dead token from Driver: " + driver.getId());
                 });
             }
@@ -0,0 +1,152 @@
+package com.takeme.service;
+
+/**
+ * Shared distance math. Batch methods take one origin and parallel {@code double[]} columns of
+ * latitudes/longitudes so ranking thousands of drivers allocates nothing per driver. The batch
+ * haversine uses the JDK Vector API when the {@code jdk.incubator.vector} module is present
+ * (run with {@code --add-modules jdk.incubator.vector}) and plain scalar code otherwise.
+ */
+public final class GeoMath {
+
+    public static final double EARTH_RADIUS_KM = 6371.0;
+
+    // Above this radius the prefilter drops too few points to pay for the extra pass
+    private static final double PREFILTER_MAX_KM = 200.0;
+
+    // The prefilter bound is exact in real arithmetic; this only absorbs rounding
+    private static final double PREFILTER_MARGIN = 1.000001;
+
+    // Per-thread columns the prefilter survivors are packed into before the batch haversine
+    private static final ThreadLocal<Columns> PACKED = ThreadLocal.withInitial(Columns::new);
+
+    private static final boolean VECTOR_ENABLED = detectVectorSupport();
+
+    private GeoMath() {
+    }
+
+    public static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+        double latDistance = Math.toRadians(lat2 - lat1);
+        double lonDistance = Math.toRadians(lon2 - lon1);
+        double sinLat = Math.sin(latDistance / 2);
+        double sinLon = Math.sin(lonDistance / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLon * sinLon;
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+
+        return EARTH_RADIUS_KM * c;
+    }
+
+    /**
+     * Exact distance from the origin to the first {@code count} points, written to {@code outKm}.
+     */
+    public static void haversineKm(double originLat, double originLng,
+                                   double[] lats, double[] lngs, int count, double[] outKm) {
+        if (VECTOR_ENABLED && count >= VectorGeoKernel.minBatch()) {
+            VectorGeoKernel.haversineKm(originLat, originLng, lats, lngs, count, outKm);
+        } else {
+            scalarHaversineKm(originLat, originLng, lats, lngs, 0, count, outKm);
+        }
+    }
+
+    /**
+     * Points within {@code radiusKm} of the origin. Matching positions go to {@code outIndexes}
+     * and their exact distances to {@code outKm} (both sized at least {@code count}); returns how
+     * many matched. For short radii a cheap equirectangular pass drops far points first, and the
+     * survivors are packed into contiguous columns so the batch haversine (vectorised when
+     * available) only runs on them.
+     */
+    public static int withinRadius(double originLat, double originLng, double[] lats, double[] lngs, int count,
+                                   double radiusKm, int[] outIndexes, double[] outKm) {
+        if (radiusKm > PREFILTER_MAX_KM) {
+            haversineKm(originLat, originLng, lats, lngs, count, outKm);
+            int matched = 0;
+            for (int i = 0; i < count; i++) {
+                if (outKm[i] <= radiusKm) {
+                    outIndexes[matched] = i;
+                    outKm[matched++] = outKm[i];
+                }
+            }
+            return matched;
+        }
+
+        // Equirectangular prefilter: no trig per point and no square root. It has to be a lower
+        // bound on the true distance, so longitude is scaled by the cos of the latitude farthest
+        // from the equator the circle can reach, and longitude gaps wrap across the antimeridian.
+        double kmPerDegree = Math.toRadians(EARTH_RADIUS_KM);
+        double limit = radiusKm * PREFILTER_MARGIN / kmPerDegree;
+        double farthestLat = Math.abs(originLat) + limit;
+        double lngScale = farthestLat >= 90.0 ? 0.0 : Math.cos(Math.toRadians(farthestLat));
+        double limitSquared = limit * limit;
+        Columns packed = PACKED.get().ensureCapacity(count);
+        int candidates = 0;
+        for (int i = 0; i < count; i++) {
+            double dLat = lats[i] - originLat;
+            double dLng = lngs[i] - originLng;
+            if (dLng > 180.0) {
+                dLng -= 360.0;
+            } else if (dLng < -180.0) {
+                dLng += 360.0;
+            }
+            dLng *= lngScale;
+            if (dLat * dLat + dLng * dLng <= limitSquared) {
+                outIndexes[candidates] = i;
+                packed.lats[candidates] = lats[i];
+                packed.lngs[candidates++] = lngs[i];
+            }
+        }
+
+        haversineKm(originLat, originLng, packed.lats, packed.lngs, candidates, outKm);
+        int matched = 0;
+        for (int c = 0; c < candidates; c++) {
+            if (outKm[c] <= radiusKm) {
+                outIndexes[matched] = outIndexes[c];
+                outKm[matched++] = outKm[c];
+            }
+        }
+        return matched;
+    }
+
+    public static boolean isVectorEnabled() {
+        return VECTOR_ENABLED;
+    }
+
+    static void scalarHaversineKm(double originLat, double originLng,
+                                  double[] lats, double[] lngs, int from, int to, double[] outKm) {
+        double cosOrigin = Math.cos(Math.toRadians(originLat));
+        for (int i = from; i < to; i++) {
+            double sinLat = Math.sin(Math.toRadians(lats[i] - originLat) / 2);
+            double sinLon = Math.sin(Math.toRadians(lngs[i] - originLng) / 2);
+            double a = sinLat * sinLat + cosOrigin * Math.cos(Math.toRadians(lats[i])) * sinLon * sinLon;
+            outKm[i] = EARTH_RADIUS_KM * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        }
+    }
+
+    private static boolean detectVectorSupport() {
+        if (!Boolean.parseBoolean(System.getProperty("app.geo.vector.enabled", "true"))) {
+            return false;
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            // Touches the kernel class so a missing module shows up here rather than mid-request
+            return VectorGeoKernel.minBatch() > 0;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private static final class Columns {
+        double[] lats = new double[256];
+        double[] lngs = new double[256];
+
+        Columns ensureCapacity(int size) {
+            if (size > lats.length) {
+                int capacity = Math.max(size, lats.length * 2);
+                lats = new double[capacity];
+                lngs = new double[capacity];
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.takeme.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves notifications older than the retention age from the notifications table to
+ * notifications_archive, one chunk per transaction. Keeping the hot table to recent rows keeps
+ * its indexes small, so inbox pages stay short range scans on (user_id, created_at, id).
+ */
+@Service
+public class NotificationRetentionService {
+
+    private static final String SELECT_EXPIRED_SQL =
+            "SELECT id, user_id, is_read FROM notifications WHERE created_at < ? ORDER BY created_at LIMIT ?";
+
+    private static final String ARCHIVE_SQL =
+            "INSERT INTO notifications_archive "
+            + "(id, user_id, title, message, type, related_ride_id, is_read, created_at, read_at, archived_at) "
+            + "SELECT id, user_id, title, message, type, related_ride_id, is_read, created_at, read_at, :archivedAt "
+            + "FROM notifications WHERE id IN (:ids)";
+
+    private static final String DELETE_SQL = "DELETE FROM notifications WHERE id IN (:ids)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private UnreadNotificationCounter unreadCounter;
+
+    @Value("${app.notifications.retention.days:90}")
+    private int retentionDays;
+
+    @Value("${app.notifications.retention.chunk-size:1000}")
+    private int chunkSize;
+
+    @Scheduled(cron = "${app.notifications.retention.cron:0 15 4 * * *}")
+    public void scheduledArchive() {
+        try {
+            archiveExpired();
+        } catch (Exception e) {
+            // Chunks already moved stay moved; the next run picks up from the oldest remaining row
+            System.err.println("Notification archiving failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Archives every notification created before the retention cutoff.
+     */
+    public Map<String, Object> archiveExpired() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+        int archived = 0;
+        int chunks = 0;
+
+        while (true) {
+            List<Long> ids = new ArrayList<>(chunkSize);
+            Set<Long> usersWithUnread = new HashSet<>();
+            jdbcTemplate.query(SELECT_EXPIRED_SQL, rs -> {
+                ids.add(rs.getLong("id"));
+                if (!rs.getBoolean("is_read")) {
+                    usersWithUnread.add(rs.getLong("user_id"));
+                }
+            }, Timestamp.valueOf(cutoff), chunkSize);
+            if (ids.isEmpty()) break;
+
+            Integer moved = transactionTemplate.execute(status -> {
+                MapSqlParameterSource params = new MapSqlParameterSource()
+                        .addValue("ids", ids)
+                        .addValue("archivedAt", Timestamp.valueOf(LocalDateTime.now()));
+                namedParameterJdbcTemplate.update(ARCHIVE_SQL, params);
+                return namedParameterJdbcTemplate.update(DELETE_SQL, params);
+            });
+            archived += moved != null ? moved : 0;
+            chunks++;
+
+            // Archived unread rows no longer count towards the badge; those users reload with a fresh COUNT
+            for (Long userId : usersWithUnread) {
+                unreadCounter.evict(userId);
+            }
+            if (ids.size() < chunkSize) break;
+        }
+        System.out.println("Archived " + archived + " notifications older than " + cutoff + " in " + chunks + " chunks.");
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("archived", archived);
+        result.put("chunks", chunks);
+        result.put("cutoff", cutoff);
+        return result;
+    }
+}
@@ -1,8 +1,11 @@
 package com.takeme.service;
 
+import com.takeme.dto.CursorPage;
+import com.takeme.dto.KeysetCursor;
 import com.takeme.model.Notification;
 import com.takeme.repository.NotificationRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -11,21 +14,56 @@ import java.util.List;
 @Service
 public class NotificationService {
     
+    private static final int MAX_PAGE_SIZE = 50;
+    
     @Autowired
     private NotificationRepository notificationRepository;
     
+    @Autowired
+    private NotificationWriteBehindSink notificationSink;
+    
+    @Autowired
+    private UnreadNotificationCounter unreadCounter;
+    
     public List<Notification> getUserNotifications(Long userId) {
         return notificationRepository.findByUserIdOrderByCreatedAtDesc(userId);
     }
     
+    public CursorPage<Notification> getUserNotificationsPage(Long userId, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        if (after != null && after.timestamp() == null) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        
+        // One extra row tells us whether another page exists
+        PageRequest window = PageRequest.of(0, pageSize + 1);
+        List<Notification> notifications = after == null
+            ? notificationRepository.findByUserIdOrderByCreatedAtDescIdDesc(userId, window)
+            : notificationRepository.findPageAfter(userId, after.timestamp(), after.id(), window);
+        
+        boolean hasMore = notifications.size() > pageSize;
+        if (hasMore) {
+            notifications = notifications.subList(0, pageSize);
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            Notification last = notifications.get(notifications.size() - 1);
+            nextCursor = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new CursorPage<>(notifications, nextCursor, hasMore);
+    }
+    
     public List<Notification> getUnreadNotifications(Long userId) {
         return notificationRepository.findByUserIdAndIsRead(userId, false);
     }
     
+    // Served from the per-user counter; only the first poll after a miss runs a COUNT
     public Long getUnreadCount(Long userId) {
-        return notificationRepository.countByUserIdAndIsRead(userId, false);
+        return unreadCounter.get(userId);
     }
     
+    // Queued for a batched insert rather than saved inline; the returned notification has no id yet
     public Notification createNotification(Long userId, String title, String message, String type, Long relatedRideId) {
         Notification notification = new Notification();
         notification.setUserId(userId);
@@ -35,27 +73,35 @@ public class NotificationService {
         notification.setRelatedRideId(relatedRideId);
         notification.setIsRead(false);
         
-        return notificationRepository.save(notification);
+        // The sink bumps the unread counter as it accepts the row
+        notificationSink.submit(notification);
+        return notification;
     }
     
+    // The conditional UPDATE decides which caller flipped the row, and only that one decrements
     public Notification markAsRead(Long notificationId) {
         Notification notification = notificationRepository.findById(notificationId)
             .orElseThrow(() -> new RuntimeException("Notification not found"));
         
-        notification.setIsRead(true);
-        notification.setReadAt(LocalDateTime.now());
-        
-        return notificationRepository.save(notification);
-    }
-    
-    public void markAllAsRead(Long userId) {
-        List<Notification> unreadNotifications = getUnreadNotifications(userId);
-        
-        for (Notification notification : unreadNotifications) {
+        if (Boolean.TRUE.equals(notification.getIsRead())) {
+            return notification;
+        }
+        LocalDateTime readAt = LocalDateTime.now();
+        if (notificationRepository.markAsReadIfUnread(notificationId, readAt) == 1) {
+            unreadCounter.decrement(notification.getUserId());
             notification.setIsRead(true);
-            notification.setReadAt(LocalDateTime.now());
+            notification.setReadAt(readAt);
+            return notification;
         }
-        
-        notificationRepository.saveAll(unreadNotifications);
+        // Someone else marked it read in between; return the row as they left it
+        return notificationRepository.findById(notificationId).orElse(notification);
+    }
+    
+    // One UPDATE for all of the user's unread rows, after anything still queued for them is inserted
+    public int markAllAsRead(Long userId) {
+        notificationSink.flush();
+        int updated = notificationRepository.markAllAsRead(userId, LocalDateTime.now());
+        unreadCounter.reset(userId);
+        return updated;
     }
 }
@@ -0,0 +1,384 @@
+package com.takeme.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.takeme.model.Notification;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Write-behind buffer for notification rows. Ride transitions hand notifications to a bounded
+ * queue and return; a writer thread inserts them with one JDBC batch per flush, either when a
+ * batch fills up or when the flush interval passes. When the queue is full the caller inserts
+ * its own row synchronously, so a slow database slows producers down instead of growing memory.
+ * Rows that cannot be written (database down, shutdown) go to a spool file that is replayed on
+ * the next start; rows the database rejects outright (constraint violations) and spool lines that
+ * cannot be parsed go to a dead-letter file instead, since replaying them would only fail again.
+ * Per-user counts of rows submitted but not yet stored let readers add queued
+ * rows to a COUNT without waiting for a flush.
+ */
+@Service
+public class NotificationWriteBehindSink {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO notifications (user_id, title, message, type, related_ride_id, is_read, created_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.notifications.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.notifications.write-behind.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.notifications.write-behind.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${app.notifications.write-behind.spool-file:notification-spool.ndjson}")
+    private String spoolFile;
+
+    @Value("${app.notifications.write-behind.dead-letter-file:notification-dead-letter.ndjson}")
+    private String deadLetterFile;
+
+    private BlockingQueue<Notification> queue;
+
+    // Held while rows move from the queue to the table, so flush() returns only once earlier submits are stored
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Object wakeUp = new Object();
+    private volatile boolean running;
+    private Thread writer;
+
+    // userId -> rows submitted but not yet inserted or spooled; also the lock that orders submits against counts
+    private final Map<Long, Integer> unstored = new HashMap<>();
+    private volatile Consumer<Long> queuedListener = userId -> {};
+
+    private Counter rowsWritten;
+    private Counter synchronousFallbacks;
+    private Counter rowsSpooled;
+    private Counter rowsDeadLettered;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("notifications.write-behind.queue", queue, Collection::size)
+                .description("Notifications waiting to be inserted")
+                .register(meterRegistry);
+        rowsWritten = Counter.builder("notifications.write-behind.written")
+                .description("Notification rows inserted by batch flushes")
+                .register(meterRegistry);
+        synchronousFallbacks = Counter.builder("notifications.write-behind.sync-fallback")
+                .description("Notifications inserted on the caller's thread because the queue was full")
+                .register(meterRegistry);
+        rowsSpooled = Counter.builder("notifications.write-behind.spooled")
+                .description("Notification rows written to the spool file instead of the database")
+                .register(meterRegistry);
+        rowsDeadLettered = Counter.builder("notifications.write-behind.dead-lettered")
+                .description("Notification rows rejected by the database or unreadable in the spool")
+                .register(meterRegistry);
+
+        running = true;
+        writer = new Thread(this::runWriter, "notification-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        synchronized (wakeUp) {
+            wakeUp.notifyAll();
+        }
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Whatever is still queued is inserted now, or spooled if the database is already gone
+        flush();
+    }
+
+    public void submit(Notification notification) {
+        // These columns are NOT NULL; rejected here, the caller gets the error the inline save used to give it
+        if (notification.getUserId() == null) {
+            throw new IllegalArgumentException("Notification userId is required");
+        }
+        if (notification.getTitle() == null) {
+            throw new IllegalArgumentException("Notification title is required");
+        }
+        if (notification.getCreatedAt() == null) {
+            // @CreationTimestamp only applies to Hibernate inserts. Millisecond precision matches
+            // the inbox cursor, so a page boundary never falls between two stored sub-millisecond values
+            notification.setCreatedAt(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+        }
+        synchronized (unstored) {
+            unstored.merge(notification.getUserId(), 1, Integer::sum);
+            queuedListener.accept(notification.getUserId());
+        }
+        if (queue.offer(notification)) {
+            if (queue.size() >= batchSize) {
+                synchronized (wakeUp) {
+                    wakeUp.notifyAll();
+                }
+            }
+            return;
+        }
+        // Backpressure: the queue is full, so this caller pays for its own insert
+        synchronousFallbacks.increment();
+        writeLock.lock();
+        try {
+            write(List.of(notification));
+            stored(List.of(notification));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Called for every submitted row, atomically with it being added to the counts that
+     * {@link #countSubmitted} reads.
+     */
+    public void onQueued(Consumer<Long> listener) {
+        queuedListener = listener;
+    }
+
+    /**
+     * Gives {@code total} the user's stored rows (from {@code storedCount}) plus their rows still
+     * waiting to be written. No batch is written while the COUNT runs and no row can be submitted
+     * while {@code total} runs, so every submitted row is in exactly one of the two.
+     */
+    public void countSubmitted(Long userId, LongSupplier storedCount, LongConsumer total) {
+        writeLock.lock();
+        try {
+            long stored = storedCount.getAsLong();
+            synchronized (unstored) {
+                total.accept(stored + unstored.getOrDefault(userId, 0));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Inserts everything submitted so far before returning.
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            List<Notification> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                write(batch);
+                stored(batch);
+                batch.clear();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int pendingCount() {
+        return queue.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void replaySpool() {
+        Path path = Paths.get(spoolFile);
+        Path replaying = path.resolveSibling(path.getFileName() + ".replaying");
+        try {
+            // A replay that died part way leaves its file behind; those rows are older, so they go first
+            if (Files.exists(replaying)) {
+                replay(replaying);
+            }
+            if (Files.exists(path)) {
+                // Move the file aside first so rows that fail again are spooled to a fresh file, not re-read
+                Files.move(path, replaying);
+                replay(replaying);
+            }
+        } catch (IOException e) {
+            System.err.println("Notification spool replay failed: " + e.getMessage());
+        }
+    }
+
+    // Rows inserted before a crash are inserted again on the next replay; a duplicate notification beats a lost one
+    private void replay(Path file) throws IOException {
+        List<Notification> batch = new ArrayList<>(batchSize);
+        int replayed = 0;
+        int unreadable = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                Notification notification;
+                try {
+                    notification = objectMapper.readValue(line, Notification.class);
+                } catch (IOException e) {
+                    // One torn or corrupt line must not hold back the rest of the file
+                    append(deadLetterFile, List.of(line));
+                    rowsDeadLettered.increment();
+                    unreadable++;
+                    continue;
+                }
+                batch.add(notification);
+                if (batch.size() == batchSize) {
+                    write(batch);
+                    replayed += batch.size();
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+            replayed += batch.size();
+        }
+        Files.delete(file);
+        System.out.println("Replayed " + replayed + " spooled notifications"
+                + (unreadable > 0 ? ", " + unreadable + " unreadable lines moved to " + deadLetterFile : "") + ".");
+    }
+
+    private void runWriter() {
+        while (running) {
+            try {
+                synchronized (wakeUp) {
+                    if (running && queue.size() < batchSize) {
+                        wakeUp.wait(flushIntervalMs);
+                    }
+                }
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Notification writer error: " + e.getMessage());
+            }
+        }
+    }
+
+    // IDENTITY keys turn off Hibernate's insert batching, so the batch goes through JDBC directly
+    private void write(List<Notification> batch) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), this::bind);
+            rowsWritten.increment(batch.size());
+        } catch (Exception e) {
+            System.err.println("Notification batch insert of " + batch.size() + " rows failed: " + e.getMessage());
+            writeOneByOne(batch);
+        }
+    }
+
+    // A batch fails as a whole, so retry its rows singly. A row the database rejects on its own
+    // data is dead-lettered; once a row fails for any other reason the database is unreachable,
+    // and the rest are spooled without trying each one.
+    private void writeOneByOne(List<Notification> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            Notification notification = batch.get(i);
+            try {
+                jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, notification));
+                rowsWritten.increment();
+            } catch (DataIntegrityViolationException e) {
+                System.err.println("Notification for user " + notification.getUserId() + " rejected: " + e.getMessage());
+                deadLetter(notification);
+            } catch (Exception e) {
+                spool(batch.subList(i, batch.size()));
+                return;
+            }
+        }
+    }
+
+    private void bind(PreparedStatement ps, Notification n) throws SQLException {
+        ps.setLong(1, n.getUserId());
+        ps.setString(2, n.getTitle());
+        ps.setString(3, n.getMessage());
+        ps.setString(4, n.getType());
+        if (n.getRelatedRideId() != null) {
+            ps.setLong(5, n.getRelatedRideId());
+        } else {
+            ps.setNull(5, Types.BIGINT);
+        }
+        ps.setBoolean(6, Boolean.TRUE.equals(n.getIsRead()));
+        ps.setTimestamp(7, Timestamp.valueOf(n.getCreatedAt()));
+    }
+
+    // Inserted, spooled or dead-lettered, the rows no longer count as queued; spooled ones come back on replay
+    private void stored(List<Notification> batch) {
+        synchronized (unstored) {
+            for (Notification notification : batch) {
+                unstored.computeIfPresent(notification.getUserId(), (id, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+    }
+
+    private void spool(List<Notification> batch) {
+        try {
+            List<String> lines = new ArrayList<>(batch.size());
+            for (Notification notification : batch) {
+                lines.add(objectMapper.writeValueAsString(notification));
+            }
+            append(spoolFile, lines);
+            rowsSpooled.increment(batch.size());
+        } catch (IOException e) {
+            System.err.println("Could not spool " + batch.size() + " notifications, they are lost: " + e.getMessage());
+        }
+    }
+
+    private void deadLetter(Notification notification) {
+        try {
+            append(deadLetterFile, List.of(objectMapper.writeValueAsString(notification)));
+            rowsDeadLettered.increment();
+        } catch (IOException e) {
+            System.err.println("Could not dead-letter notification for user " + notification.getUserId()
+                    + ", it is lost: " + e.getMessage());
+        }
+    }
+
+    private synchronized void append(String file, List<String> lines) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (String line : lines) {
+                out.write(line);
+                out.newLine();
+            }
+        }
+    }
+}
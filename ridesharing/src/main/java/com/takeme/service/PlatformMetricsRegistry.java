@@ -0,0 +1,189 @@
+package com.takeme.service;
+
+import com.takeme.model.Driver;
+import com.takeme.model.Incident;
+import com.takeme.model.Ride;
+import com.takeme.model.Rider;
+import com.takeme.repository.IncidentRepository;
+import com.takeme.repository.TransactionRepository;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live platform counters behind the admin dashboard. Services bump them on every state
+ * transition, so reading the dashboard is a handful of adder sums. A periodic reconcile realigns
+ * them from count/aggregate queries, which also repairs anything a missed hook left behind.
+ */
+@Service
+public class PlatformMetricsRegistry {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private IncidentRepository incidentRepository;
+
+    private final LongAdder totalUsers = new LongAdder();
+    private final LongAdder activeUsers = new LongAdder();
+    private final EnumMap<Driver.DriverStatus, LongAdder> driversByStatus = adders(Driver.DriverStatus.class);
+    private final EnumMap<Ride.RideStatus, LongAdder> ridesByStatus = adders(Ride.RideStatus.class);
+    private final EnumMap<Incident.IncidentStatus, LongAdder> incidentsByStatus = adders(Incident.IncidentStatus.class);
+    private final DoubleAdder totalRevenue = new DoubleAdder();
+    private final LongAdder totalTransactions = new LongAdder();
+
+    private volatile LocalDateTime reconciledAt;
+
+    public void riderRegistered(boolean active) {
+        totalUsers.increment();
+        if (active) activeUsers.increment();
+    }
+
+    public void riderActiveChanged(boolean wasActive, boolean active) {
+        if (wasActive == active) return;
+        activeUsers.add(active ? 1 : -1);
+    }
+
+    /**
+     * A null previous status means a newly registered driver.
+     */
+    public void driverStatusChanged(Driver.DriverStatus previous, Driver.DriverStatus status) {
+        if (previous == status) return;
+        if (previous != null) driversByStatus.get(previous).decrement();
+        if (status != null) driversByStatus.get(status).increment();
+    }
+
+    /**
+     * A null previous status means a newly created ride.
+     */
+    public void rideStatusChanged(Ride.RideStatus previous, Ride.RideStatus status) {
+        if (previous == status) return;
+        if (previous != null) ridesByStatus.get(previous).decrement();
+        if (status != null) ridesByStatus.get(status).increment();
+    }
+
+    public void revenueRecorded(Double fare) {
+        if (fare != null) totalRevenue.add(fare);
+    }
+
+    public void transactionRecorded() {
+        totalTransactions.increment();
+    }
+
+    public void incidentReported() {
+        incidentsByStatus.get(Incident.IncidentStatus.REPORTED).increment();
+    }
+
+    public Map<String, Object> snapshot() {
+        long onlineDrivers = 0;
+        long totalDrivers = 0;
+        for (Map.Entry<Driver.DriverStatus, LongAdder> entry : driversByStatus.entrySet()) {
+            long count = entry.getValue().sum();
+            totalDrivers += count;
+            if (entry.getKey() != Driver.DriverStatus.OFFLINE) onlineDrivers += count;
+        }
+        long totalRides = 0;
+        for (LongAdder count : ridesByStatus.values()) {
+            totalRides += count.sum();
+        }
+        long totalIncidents = 0;
+        for (LongAdder count : incidentsByStatus.values()) {
+            totalIncidents += count.sum();
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalUsers", totalUsers.sum());
+        stats.put("activeUsers", activeUsers.sum());
+        stats.put("totalDrivers", totalDrivers);
+        stats.put("activeDrivers", driversByStatus.get(Driver.DriverStatus.AVAILABLE).sum());
+        stats.put("onlineDrivers", onlineDrivers);
+        stats.put("totalRides", totalRides);
+        stats.put("completedRides", ridesByStatus.get(Ride.RideStatus.COMPLETED).sum());
+        stats.put("activeRides", ridesByStatus.get(Ride.RideStatus.STARTED).sum()
+            + ridesByStatus.get(Ride.RideStatus.ACCEPTED).sum());
+        stats.put("requestedRides", ridesByStatus.get(Ride.RideStatus.REQUESTED).sum());
+        stats.put("totalRevenue", totalRevenue.sum());
+        stats.put("totalTransactions", totalTransactions.sum());
+        stats.put("totalIncidents", totalIncidents);
+        stats.put("unresolvedIncidents", incidentsByStatus.get(Incident.IncidentStatus.REPORTED).sum());
+        stats.put("reconciledAt", reconciledAt);
+        return stats;
+    }
+
+    // Runs once at startup and then on the interval
+    @Scheduled(fixedDelayString = "${app.metrics.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        try {
+            align(totalUsers, mongoTemplate.count(new Query(), Rider.class));
+            align(activeUsers, mongoTemplate.count(new Query(Criteria.where("active").is(true)), Rider.class));
+
+            Map<String, Long> drivers = countByStatus(Driver.class);
+            for (Driver.DriverStatus status : Driver.DriverStatus.values()) {
+                align(driversByStatus.get(status), drivers.getOrDefault(status.name(), 0L));
+            }
+            Map<String, Long> rides = countByStatus(Ride.class);
+            for (Ride.RideStatus status : Ride.RideStatus.values()) {
+                align(ridesByStatus.get(status), rides.getOrDefault(status.name(), 0L));
+            }
+
+            Document revenue = mongoTemplate.aggregate(Aggregation.newAggregation(
+                    Aggregation.match(Criteria.where("status").is(Ride.RideStatus.COMPLETED)),
+                    Aggregation.group().sum("fare").as("total")),
+                Ride.class, Document.class).getUniqueMappedResult();
+            double revenueTotal = revenue != null && revenue.get("total") != null
+                ? ((Number) revenue.get("total")).doubleValue() : 0.0;
+            totalRevenue.add(revenueTotal - totalRevenue.sum());
+
+            align(totalTransactions, transactionRepository.count());
+            for (Incident.IncidentStatus status : Incident.IncidentStatus.values()) {
+                align(incidentsByStatus.get(status), incidentRepository.countByStatus(status));
+            }
+
+            reconciledAt = LocalDateTime.now();
+        } catch (Exception e) {
+            // Keep serving the live counters; the next pass tries again
+            System.err.println("Platform metrics reconcile failed: " + e.getMessage());
+        }
+    }
+
+    // One $group round trip instead of a count per status
+    private Map<String, Long> countByStatus(Class<?> type) {
+        Map<String, Long> counts = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(Aggregation.newAggregation(
+                Aggregation.group("status").count().as("count")), type, Document.class)) {
+            Object status = row.get("_id");
+            if (status != null) {
+                counts.put(status.toString(), ((Number) row.get("count")).longValue());
+            }
+        }
+        return counts;
+    }
+
+    // Shifts by the difference instead of resetting, so increments racing the reconcile are kept
+    private static void align(LongAdder adder, long actual) {
+        adder.add(actual - adder.sum());
+    }
+
+    private static <E extends Enum<E>> EnumMap<E, LongAdder> adders(Class<E> type) {
+        EnumMap<E, LongAdder> map = new EnumMap<>(type);
+        for (E value : type.getEnumConstants()) {
+            map.put(value, new LongAdder());
+        }
+        return map;
+    }
+}
@@ -0,0 +1,159 @@
+package com.takeme.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.takeme.dto.FareQuoteDto;
+import com.takeme.model.VehicleType;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The single source of fares. The rate card (base, per-km, per-minute and minimum per vehicle
+ * type, plus hour-of-day bands) is read from {@code app.pricing.rate-card-location} and compiled
+ * into arrays indexed by {@link VehicleType#ordinal()}, so a quote is a few array reads. A reload
+ * compiles a new card and swaps it in atomically; quotes in flight keep the card they started with.
+ */
+@Service
+public class PricingEngine {
+
+    private static final int HOURS = 24;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.pricing.rate-card-location:classpath:pricing/rate-card.json}")
+    private String rateCardLocation;
+
+    private final AtomicReference<CompiledRateCard> current = new AtomicReference<>();
+
+    // Shape of the rate card file
+    public record RateCardDocument(long version, String currency, Map<String, VehicleRates> vehicles, List<TimeBand> timeBands) {}
+
+    public record VehicleRates(double baseFare, double perKm, double perMinute, double minimumFare) {}
+
+    // Applies from startHour (inclusive) to endHour (exclusive); wraps past midnight when endHour <= startHour
+    public record TimeBand(int startHour, int endHour, double multiplier) {}
+
+    @PostConstruct
+    public void init() {
+        reload();
+    }
+
+    /**
+     * Re-reads the rate card and swaps it in. A card that fails validation leaves the current one in place.
+     */
+    public long reload() {
+        Resource resource = resourceLoader.getResource(rateCardLocation);
+        try (InputStream in = resource.getInputStream()) {
+            RateCardDocument document = objectMapper.readValue(in, RateCardDocument.class);
+            CompiledRateCard compiled = compile(document);
+            current.set(compiled);
+            System.out.println("Loaded rate card version " + compiled.version() + " from " + rateCardLocation);
+            return compiled.version();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read rate card from " + rateCardLocation + ": " + e.getMessage(), e);
+        }
+    }
+
+    public long getRateCardVersion() {
+        return current.get().version();
+    }
+
+    public String getCurrency() {
+        return current.get().currency();
+    }
+
+    /**
+     * Fare for one trip. {@code durationMinutes} may be null when no trip time is known.
+     */
+    public FareQuoteDto quote(VehicleType type, double distanceKm, Integer durationMinutes, LocalDateTime at, double surgeMultiplier) {
+        CompiledRateCard card = current.get();
+        int i = type.ordinal();
+        double band = card.hourMultiplier()[at.getHour()];
+        double minutes = durationMinutes != null ? durationMinutes : 0;
+
+        double fare = card.baseFare()[i] + distanceKm * card.perKm()[i] + minutes * card.perMinute()[i];
+        fare = Math.max(fare * band, card.minimumFare()[i]) * surgeMultiplier;
+
+        return new FareQuoteDto(
+                type.getLabel(),
+                Math.round(fare * 100) / 100.0,
+                distanceKm,
+                durationMinutes,
+                band,
+                surgeMultiplier,
+                card.currency(),
+                card.version()
+        );
+    }
+
+    /**
+     * One quote per vehicle type for the same trip.
+     */
+    public List<FareQuoteDto> quoteAll(double distanceKm, Integer durationMinutes, LocalDateTime at, double surgeMultiplier) {
+        List<FareQuoteDto> quotes = new ArrayList<>(VehicleType.values().length);
+        for (VehicleType type : VehicleType.values()) {
+            quotes.add(quote(type, distanceKm, durationMinutes, at, surgeMultiplier));
+        }
+        return quotes;
+    }
+
+    private CompiledRateCard compile(RateCardDocument document) {
+        if (document.vehicles() == null) {
+            throw new IllegalStateException("Rate card has no vehicles section");
+        }
+        int n = VehicleType.values().length;
+        double[] baseFare = new double[n];
+        double[] perKm = new double[n];
+        double[] perMinute = new double[n];
+        double[] minimumFare = new double[n];
+
+        for (VehicleType type : VehicleType.values()) {
+            VehicleRates rates = document.vehicles().get(type.name());
+            if (rates == null) {
+                throw new IllegalStateException("Rate card is missing rates for " + type.name());
+            }
+            baseFare[type.ordinal()] = rates.baseFare();
+            perKm[type.ordinal()] = rates.perKm();
+            perMinute[type.ordinal()] = rates.perMinute();
+            minimumFare[type.ordinal()] = rates.minimumFare();
+        }
+
+        double[] hourMultiplier = new double[HOURS];
+        Arrays.fill(hourMultiplier, 1.0);
+        if (document.timeBands() != null) {
+            for (TimeBand band : document.timeBands()) {
+                if (band.startHour() < 0 || band.startHour() >= HOURS || band.endHour() < 0 || band.endHour() > HOURS) {
+                    throw new IllegalStateException("Invalid time band " + band);
+                }
+                // startHour == endHour covers the whole day
+                int h = band.startHour();
+                do {
+                    hourMultiplier[h] = band.multiplier();
+                    h = (h + 1) % HOURS;
+                } while (h != band.endHour() % HOURS);
+            }
+        }
+
+        String currency = document.currency() != null ? document.currency() : "INR";
+        return new CompiledRateCard(document.version(), currency, baseFare, perKm, perMinute, minimumFare, hourMultiplier);
+    }
+
+    private record CompiledRateCard(long version, String currency, double[] baseFare, double[] perKm,
+                                    double[] perMinute, double[] minimumFare, double[] hourMultiplier) {}
+}
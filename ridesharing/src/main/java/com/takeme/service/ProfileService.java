@@ -5,9 +5,14 @@ import com.takeme.model.Rider;
 import com.takeme.repository.DriverRepository;
 import com.takeme.repository.RiderRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,6 +28,18 @@ public class ProfileService {
     @Autowired
     private PasswordEncoder passwordEncoder;
     
+    @Autowired
+    private DriverLocationService driverLocationService;
+    
+    @Autowired
+    private PlatformMetricsRegistry platformMetrics;
+    
+    @Autowired
+    private DriverLeaderboard driverLeaderboard;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
     public Object getProfile(Long userId, String role) {
         if ("Driver".equalsIgnoreCase(role)) {
             return driverRepository.findById(userId)
@@ -48,34 +65,73 @@ public class ProfileService {
             Driver driver = driverRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Driver not found"));
             
-            // Update driver fields (basic implementation)
+            // Update driver fields (basic implementation); only the fields sent are written
+            Update update = new Update();
             if (profileData instanceof java.util.Map) {
                 java.util.Map<String, Object> data = (java.util.Map<String, Object>) profileData;
-                if (data.containsKey("name")) driver.setName((String) data.get("name"));
-                if (data.containsKey("phoneNumber")) driver.setPhoneNumber((String) data.get("phoneNumber"));
-                if (data.containsKey("vehicleType")) driver.setVehicleType((String) data.get("vehicleType"));
-                if (data.containsKey("vehicleNumber")) driver.setVehicleNumber((String) data.get("vehicleNumber"));
-                if (data.containsKey("vehicleModel")) driver.setVehicleModel((String) data.get("vehicleModel"));
-                if (data.containsKey("currentLocation")) driver.setCurrentLocation((String) data.get("currentLocation"));
+                if (data.containsKey("name")) {
+                    driver.setName((String) data.get("name"));
+                    update.set("name", driver.getName());
+                }
+                if (data.containsKey("phoneNumber")) {
+                    driver.setPhoneNumber((String) data.get("phoneNumber"));
+                    update.set("phoneNumber", driver.getPhoneNumber());
+                }
+                if (data.containsKey("vehicleType")) {
+                    driver.setVehicleType((String) data.get("vehicleType"));
+                    update.set("vehicleType", driver.getVehicleType());
+                }
+                if (data.containsKey("vehicleNumber")) {
+                    driver.setVehicleNumber((String) data.get("vehicleNumber"));
+                    update.set("vehicleNumber", driver.getVehicleNumber());
+                }
+                if (data.containsKey("vehicleModel")) {
+                    driver.setVehicleModel((String) data.get("vehicleModel"));
+                    update.set("vehicleModel", driver.getVehicleModel());
+                }
+                if (data.containsKey("currentLocation")) {
+                    driver.setCurrentLocation((String) data.get("currentLocation"));
+                    update.set("currentLocation", driver.getCurrentLocation());
+                }
             }
             
-            return driverRepository.save(driver);
+            if (!update.getUpdateObject().isEmpty()) {
+                updateDriver(userId, update);
+            }
+            // A vehicle change moves the driver to another location partition and leaderboard
+            driverLocationService.syncDriver(driver);
+            driverLeaderboard.update(driver);
+            return driver;
         } else {
             Rider rider = riderRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
             
-            // Update rider fields
+            // Update rider fields; only the fields sent are written
+            Update update = new Update();
             if (profileData instanceof java.util.Map) {
                 java.util.Map<String, Object> data = (java.util.Map<String, Object>) profileData;
-                if (data.containsKey("username")) rider.setUsername((String) data.get("username"));
-                if (data.containsKey("phoneNumber")) rider.setPhoneNumber((String) data.get("phoneNumber"));
+                if (data.containsKey("username")) {
+                    rider.setUsername((String) data.get("username"));
+                    update.set("username", rider.getUsername());
+                }
+                if (data.containsKey("phoneNumber")) {
+                    rider.setPhoneNumber((String) data.get("phoneNumber"));
+                    update.set("phoneNumber", rider.getPhoneNumber());
+                }
                 if (data.containsKey("age") && data.get("age") != null) {
                     rider.setAge(Integer.parseInt(data.get("age").toString()));
+                    update.set("age", rider.getAge());
+                }
+                if (data.containsKey("location")) {
+                    rider.setLocation((String) data.get("location"));
+                    update.set("location", rider.getLocation());
                 }
-                if (data.containsKey("location")) rider.setLocation((String) data.get("location"));
             }
             
-            return riderRepository.save(rider);
+            if (!update.getUpdateObject().isEmpty()) {
+                updateRider(rider, update);
+            }
+            return rider;
         }
     }
     
@@ -90,8 +146,12 @@ public class ProfileService {
         Driver driver = driverRepository.findById(driverId)
             .orElseThrow(() -> new RuntimeException("Driver not found"));
         
+        Driver.DriverStatus previousStatus = driver.getStatus();
         driver.setStatus(status);
-        return driverRepository.save(driver);
+        updateDriver(driverId, new Update().set("status", status));
+        driverLocationService.syncDriver(driver);
+        platformMetrics.driverStatusChanged(previousStatus, status);
+        return driver;
     }
     
     public Driver updateDriverLocation(Long driverId, Double latitude, Double longitude, String location) {
@@ -100,11 +160,15 @@ public class ProfileService {
         
         driver.setCurrentLatitude(latitude);
         driver.setCurrentLongitude(longitude);
+        Update update = new Update().set("currentLatitude", latitude).set("currentLongitude", longitude);
         if (location != null) {
             driver.setCurrentLocation(location);
+            update.set("currentLocation", location);
         }
         
-        return driverRepository.save(driver);
+        updateDriver(driverId, update);
+        driverLocationService.syncDriver(driver);
+        return driver;
     }
 
     public void updateFcmToken(Long userId, String role, String token) {
@@ -112,12 +176,25 @@ public class ProfileService {
             Driver driver = driverRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Driver not found"));
             driver.setFcmToken(token);
-            driverRepository.save(driver);
+            updateDriver(userId, new Update().set("fcmToken", token));
         } else {
             Rider rider = riderRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
             rider.setFcmToken(token);
-            riderRepository.save(rider);
+            updateRider(rider, new Update().set("fcmToken", token));
         }
     }
+
+    // Targeted $set on the stored driver; a whole-document save from this copy would write back
+    // whatever wallet and rating values it was read with
+    private void updateDriver(Long driverId, Update update) {
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(driverId)), update, Driver.class);
+    }
+
+    // Same for riders; @LastModifiedDate only applies to save, so updatedAt is set here
+    private void updateRider(Rider rider, Update update) {
+        rider.setUpdatedAt(LocalDateTime.now());
+        update.set("updatedAt", rider.getUpdatedAt());
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(rider.getId())), update, Rider.class);
+    }
 }
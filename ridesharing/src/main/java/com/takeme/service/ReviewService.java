@@ -2,10 +2,7 @@ package com.takeme.service;
 
 import com.takeme.model.Review;
 import com.takeme.model.Ride;
-import com.takeme.model.Driver;
 import com.takeme.repository.ReviewRepository;
-import com.takeme.repository.RideRepository;
-import com.takeme.repository.DriverRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -18,28 +15,24 @@ public class ReviewService {
     private ReviewRepository reviewRepository;
     
     @Autowired
-    private RideRepository rideRepository;
-    
-    @Autowired
-    private DriverRepository driverRepository;
+    private DriverRatingService driverRatingService;
     
     @Autowired
     private NotificationService notificationService;
     
     public Review submitReview(Long rideId, Long reviewerId, Integer rating, String comment, String reviewerType) {
-        // Validate ride exists and is completed
-        Ride ride = rideRepository.findById(rideId)
-            .orElseThrow(() -> new RuntimeException("Ride not found"));
-        
-        if (ride.getStatus() != Ride.RideStatus.COMPLETED) {
-            throw new RuntimeException("Only completed rides can be reviewed");
+        if (rating == null) {
+            throw new RuntimeException("Rating is required");
         }
         
-        if (rating < 1 || rating > 5) {
-            throw new RuntimeException("Rating must be between 1 and 5");
-        }
+        // The review's stars are the ride's rating: validates the ride and updates the driver's counters
+        Ride ride = driverRatingService.rateRide(rideId, rating);
         
-        Review review = new Review();
+        // A second review of the same ride by the same reviewer edits the first one
+        Review review = reviewRepository.findByRideIdAndReviewerId(rideId, reviewerId).stream()
+            .findFirst()
+            .orElseGet(Review::new);
+        boolean edited = review.getId() != null;
         review.setRideId(rideId);
         review.setReviewerId(reviewerId);
         review.setRevieweeId(ride.getDriverId()); // Assuming user reviews driver
@@ -49,13 +42,10 @@ public class ReviewService {
         
         review = reviewRepository.save(review);
         
-        // Update driver's average rating
-        updateDriverRating(ride.getDriverId());
-        
         // Notify driver
         notificationService.createNotification(
             ride.getDriverId(),
-            "New Review Received",
+            edited ? "Review Updated" : "New Review Received",
             "You received a " + rating + " star review",
             "REVIEW",
             rideId
@@ -64,17 +54,6 @@ public class ReviewService {
         return review;
     }
     
-    private void updateDriverRating(Long driverId) {
-        Double avgRating = reviewRepository.getAverageRatingForDriver(driverId);
-        if (avgRating != null) {
-            Driver driver = driverRepository.findById(driverId).orElse(null);
-            if (driver != null) {
-                driver.setRating(avgRating);
-                driverRepository.save(driver);
-            }
-        }
-    }
-    
     public List<Review> getDriverReviews(Long driverId) {
         return reviewRepository.findByRevieweeId(driverId);
     }
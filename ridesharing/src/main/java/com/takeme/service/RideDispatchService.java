@@ -0,0 +1,154 @@
+package com.takeme.service;
+
+import com.takeme.dto.NearbyDriverDto;
+import com.takeme.model.Ride;
+import com.takeme.model.VehicleType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Push-based matching. Every tick the open REQUESTED rides and the available drivers around them
+ * are solved as one assignment problem on pickup ETA, and each matched driver receives an
+ * offer. Drivers can still browse GET /api/rides/requests; acceptance goes through the usual
+ * acceptRide path either way.
+ */
+@Service
+@ConditionalOnProperty(name = "app.feature.dispatch.enabled", havingValue = "true")
+public class RideDispatchService {
+
+    // Cost for a ride/driver pair that is out of range; such pairs are never offered
+    private static final double NO_MATCH = 1_000_000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private RideService rideService;
+
+    @Autowired
+    private DriverLocationService driverLocationService;
+
+    @Autowired
+    private DriverSpatialIndex driverSpatialIndex;
+
+    @Autowired
+    private RideNotificationService rideNotificationService;
+
+    @Autowired
+    private EtaService etaService;
+
+    @Value("${app.dispatch.search-radius-km:5.0}")
+    private double searchRadiusKm;
+
+    @Value("${app.dispatch.max-rides-per-batch:200}")
+    private int maxRidesPerBatch;
+
+    @Value("${app.dispatch.offer-ttl-ms:15000}")
+    private long offerTtlMs;
+
+    // rideId -> outstanding offer; a ride and its driver sit out of matching until the offer lapses
+    private final Map<Long, PendingOffer> pendingOffers = new ConcurrentHashMap<>();
+
+    private record PendingOffer(Long driverId, long expiresAt) {}
+
+    private record Edge(double etaMinutes, double distanceKm) {}
+
+    @Scheduled(fixedDelayString = "${app.dispatch.interval-ms:500}")
+    public void dispatch() {
+        long now = System.currentTimeMillis();
+        pendingOffers.values().removeIf(offer -> offer.expiresAt() <= now);
+
+        Set<Long> offeredDrivers = pendingOffers.values().stream()
+                .map(PendingOffer::driverId)
+                .collect(Collectors.toSet());
+
+        // Oldest open rides first, so a backlog is worked off in order instead of starving the earliest requests
+        Query open = new Query(Criteria.where("status").is(Ride.RideStatus.REQUESTED)
+                .and("isScheduled").ne(true)
+                .and("pickupLatitude").ne(null)
+                .and("pickupLongitude").ne(null)
+                .and("id").nin(pendingOffers.keySet()))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt", "id"))
+                .limit(maxRidesPerBatch);
+        List<Ride> openRides = mongoTemplate.find(open, Ride.class);
+
+        if (openRides.isEmpty()) return;
+
+        // Candidate edges per ride (driver -> pickup ETA in minutes), and the union of drivers seen across the batch
+        List<Map<Long, Edge>> candidates = new ArrayList<>(openRides.size());
+        LinkedHashMap<Long, Integer> driverColumns = new LinkedHashMap<>();
+        for (Ride ride : openRides) {
+            Map<Long, Edge> edges = new HashMap<>();
+            // Only drivers in the ride's vehicle partition are candidates
+            List<VehicleType> vehicleTypes = List.of(VehicleType.fromLabelOrDefault(ride.getVehicleType()));
+            List<NearbyDriverDto> nearbyDrivers = driverLocationService.getNearbyDrivers(
+                    ride.getPickupLatitude(), ride.getPickupLongitude(), searchRadiusKm, vehicleTypes);
+            etaService.annotate(nearbyDrivers, ride.getPickupLatitude(), ride.getPickupLongitude());
+            for (NearbyDriverDto nearby : nearbyDrivers) {
+                Long driverId = nearby.getDriverId();
+                if (offeredDrivers.contains(driverId) || !driverSpatialIndex.isAvailable(driverId)) continue;
+                edges.put(driverId, new Edge(nearby.getEtaMinutes(), nearby.getDistanceKm()));
+                driverColumns.putIfAbsent(driverId, driverColumns.size());
+            }
+            candidates.add(edges);
+        }
+
+        if (driverColumns.isEmpty()) return;
+
+        double[][] cost = new double[openRides.size()][driverColumns.size()];
+        for (int i = 0; i < openRides.size(); i++) {
+            Arrays.fill(cost[i], NO_MATCH);
+            for (Map.Entry<Long, Edge> edge : candidates.get(i).entrySet()) {
+                cost[i][driverColumns.get(edge.getKey())] = edge.getValue().etaMinutes();
+            }
+        }
+
+        int[] assignment = AssignmentSolver.solve(cost);
+        Long[] driverIds = driverColumns.keySet().toArray(new Long[0]);
+
+        Set<Long> assignedDrivers = new HashSet<>();
+        long expiresAt = now + offerTtlMs;
+        int offers = 0;
+        for (int i = 0; i < assignment.length; i++) {
+            int column = assignment[i];
+            if (column < 0 || cost[i][column] >= NO_MATCH) continue;
+
+            Ride ride = openRides.get(i);
+            Long driverId = driverIds[column];
+            if (!assignedDrivers.add(driverId)) continue;
+
+            pendingOffers.put(ride.getId(), new PendingOffer(driverId, expiresAt));
+            rideNotificationService.sendRideOffer(
+                    rideService.convertToResponse(ride),
+                    driverId,
+                    candidates.get(i).get(driverId).distanceKm(),
+                    cost[i][column],
+                    expiresAt
+            );
+            offers++;
+        }
+
+        if (offers > 0) {
+            System.out.println("Dispatch batch matched " + offers + " of " + openRides.size()
+                    + " open rides across " + driverIds.length + " candidate drivers.");
+        }
+    }
+}
@@ -1,26 +1,176 @@
 package com.takeme.service;
 
 import com.takeme.dto.NearbyDriverDto;
+import com.takeme.dto.RideOfferDto;
 import com.takeme.dto.RideResponse;
+import com.takeme.security.StompPrincipals;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 @Service
 public class RideNotificationService {
 
+    public static final String OFFER_QUEUE = "/queue/offers";
+
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.ride-offers.queue-capacity:10}")
+    private int queueCapacity;
+
+    @Value("${app.ride-offers.fanout-threads:4}")
+    private int fanoutThreads;
+
+    @Value("${app.ride-offers.ttl-ms:30000}")
+    private long offerTtlMs;
+
+    // One bounded outbox per driver; at most one drain task per outbox is in flight
+    private final ConcurrentHashMap<Long, DriverOutbox> outboxes = new ConcurrentHashMap<>();
+
+    private ExecutorService fanoutExecutor;
+
+    private Counter offersSent;
+    private Counter offersMerged;
+    private Counter offersDropped;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        fanoutExecutor = Executors.newFixedThreadPool(fanoutThreads, runnable -> {
+            Thread thread = new Thread(runnable, "ride-offer-fanout-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        offersSent = Counter.builder("ride.offers.sent")
+                .description("Ride offers handed to the STOMP broker")
+                .register(meterRegistry);
+        offersMerged = Counter.builder("ride.offers.merged")
+                .description("Offers that replaced a queued offer for the same ride")
+                .register(meterRegistry);
+        offersDropped = Counter.builder("ride.offers.dropped")
+                .description("Offers dropped because a driver's queue was full or the offer expired")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanoutExecutor.shutdownNow();
+    }
+
     public void sendRideUpdate(Long rideId, RideResponse rideResponse) {
         String destination = "/topic/ride-updates/" + rideId;
         messagingTemplate.convertAndSend(destination, rideResponse);
     }
 
-	public void notifyDriversOfNewRide(Long rideId, List<NearbyDriverDto> nearbyDrivers) {
-				
-	}
+    /**
+     * Queues an offer for one driver. It is delivered to that driver's own session on
+     * /user/queue/offers, which only a STOMP connection authenticated as the driver can receive.
+     */
+    public void sendRideOffer(RideResponse ride, Long driverId, double pickupDistanceKm, double pickupEtaMinutes,
+                              long expiresAt) {
+        RideOfferDto offer = new RideOfferDto(
+                ride.getId(),
+                driverId,
+                ride.getPickupAddress(),
+                ride.getDropoffAddress(),
+                ride.getVehicleType(),
+                ride.getFare(),
+                ride.getDistance(),
+                ride.getDuration(),
+                pickupDistanceKm,
+                pickupEtaMinutes,
+                expiresAt
+        );
+
+        DriverOutbox outbox = outboxes.computeIfAbsent(offer.getDriverId(), id -> new DriverOutbox());
+
+        boolean startDrain;
+        synchronized (outbox) {
+            // A newer offer for the same ride replaces the queued one and moves to the back
+            if (outbox.offers.remove(offer.getRideId()) != null) {
+                offersMerged.increment();
+            }
+            outbox.offers.put(offer.getRideId(), offer);
+
+            // Full queue: the oldest offer is the least likely to still be open
+            while (outbox.offers.size() > queueCapacity) {
+                Iterator<Long> oldest = outbox.offers.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+                offersDropped.increment();
+            }
+
+            startDrain = !outbox.draining;
+            outbox.draining = true;
+        }
+
+        if (startDrain) {
+            fanoutExecutor.execute(() -> drain(offer.getDriverId(), outbox));
+        }
+    }
+
+    /**
+     * Pushes a new ride to every nearby driver. Each driver has a small bounded queue, so a driver
+     * with a slow connection only delays (and at worst drops) their own offers.
+     */
+    public void notifyDriversOfNewRide(RideResponse ride, List<NearbyDriverDto> nearbyDrivers) {
+        long expiresAt = System.currentTimeMillis() + offerTtlMs;
+        for (NearbyDriverDto driver : nearbyDrivers) {
+            sendRideOffer(ride, driver.getDriverId(), driver.getDistanceKm(),
+                    driver.getEtaMinutes() != null ? driver.getEtaMinutes() : 0, expiresAt);
+        }
+    }
+
+    private void drain(Long driverId, DriverOutbox outbox) {
+        String user = StompPrincipals.driver(driverId);
+        while (true) {
+            RideOfferDto next;
+            synchronized (outbox) {
+                Iterator<RideOfferDto> head = outbox.offers.values().iterator();
+                if (!head.hasNext()) {
+                    outbox.draining = false;
+                    return;
+                }
+                next = head.next();
+                head.remove();
+            }
+
+            if (next.getExpiresAt() <= System.currentTimeMillis()) {
+                offersDropped.increment();
+                continue;
+            }
+            try {
+                messagingTemplate.convertAndSendToUser(user, OFFER_QUEUE, next);
+                offersSent.increment();
+            } catch (Exception e) {
+                offersDropped.increment();
+                System.err.println("Failed to push ride offer " + next.getRideId() + " to driver " + driverId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class DriverOutbox {
+        // rideId -> offer, in arrival order
+        private final LinkedHashMap<Long, RideOfferDto> offers = new LinkedHashMap<>();
+        private boolean draining;
+    }
 }
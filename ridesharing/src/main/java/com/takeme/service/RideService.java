@@ -1,15 +1,27 @@
 package com.takeme.service;
 
+import com.takeme.dto.CursorPage;
+import com.takeme.dto.KeysetCursor;
+import com.takeme.dto.NearbyDriverDto;
 import com.takeme.dto.RideRequest;
 import com.takeme.dto.RideResponse;
 import com.takeme.dto.ScheduledRideRequest;
+import com.takeme.exception.RideAlreadyTakenException;
 import com.takeme.model.Driver;
 import com.takeme.model.Ride;
 import com.takeme.model.Rider;
+import com.takeme.model.VehicleType;
 import com.takeme.repository.DriverRepository;
 import com.takeme.repository.RideRepository;
 import com.takeme.repository.RiderRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -25,6 +37,9 @@ public class RideService {
     @Autowired
     private RideRepository rideRepository;
     
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
     @Autowired
     private RiderRepository riderRepository;
     
@@ -43,6 +58,38 @@ public class RideService {
     @Autowired
     private JobSchedulerService jobSchedulerService;
     
+    @Autowired
+    private DriverLocationService driverLocationService;
+
+    @Autowired
+    private EtaService etaService;
+
+    @Autowired
+    private SurgePricingService surgePricingService;
+
+    @Autowired
+    private PricingEngine pricingEngine;
+    
+    @Autowired
+    private DriverEarningsRollupService earningsRollupService;
+    
+    @Autowired
+    private PlatformMetricsRegistry platformMetrics;
+    
+    @Autowired
+    private DriverRatingService driverRatingService;
+
+    // When the dispatch engine is on it sends targeted offers itself
+    @Value("${app.feature.dispatch.enabled:false}")
+    private boolean dispatchEnabled;
+    
+    @Value("${app.feature.kafka.enabled:false}")
+    private boolean kafkaEnabled;
+
+    private static final int DRIVERS_TO_NOTIFY = 10;
+
+    private static final int MAX_PAGE_SIZE = 50;
+    
     public Ride createRide(RideRequest request) {
         Optional<Rider> riderOpt = riderRepository.findById(request.getRiderId());
         if (riderOpt.isEmpty()) {
@@ -67,16 +114,26 @@ public class RideService {
         
         // Calculate distance and fare
         if (request.getPickupLatitude() != null && request.getDropoffLatitude() != null) {
-            double distance = calculateDistance(
+            double distance = GeoMath.haversineKm(
                 request.getPickupLatitude(), request.getPickupLongitude(),
                 request.getDropoffLatitude(), request.getDropoffLongitude()
             );
             ride.setDistance(distance);
-            ride.setDuration(calculateDuration(distance));
-            ride.setFare(calculateFare(distance, request.getVehicleType()));
+            ride.setDuration(etaService.estimateTripMinutes(
+                request.getPickupLatitude(), request.getPickupLongitude(),
+                request.getDropoffLatitude(), request.getDropoffLongitude()
+            ));
+            double surge = surgePricingService.multiplierAt(request.getPickupLatitude(), request.getPickupLongitude());
+            ride.setSurgeMultiplier(surge);
+            ride.setFare(pricingEngine.quote(
+                VehicleType.fromLabelOrDefault(request.getVehicleType()),
+                distance, ride.getDuration(), LocalDateTime.now(), surge
+            ).getFare());
         }
         
         ride = rideRepository.save(ride);
+        surgePricingService.recordRideRequested(ride.getPickupLatitude(), ride.getPickupLongitude());
+        platformMetrics.rideStatusChanged(null, Ride.RideStatus.REQUESTED);
         
         // Notify user
         notificationService.createNotification(
@@ -87,6 +144,10 @@ public class RideService {
             ride.getId()
         );
         
+        if (!dispatchEnabled) {
+            offerToNearbyDrivers(ride);
+        }
+        
         return ride;
     }
     
@@ -117,12 +178,15 @@ public class RideService {
         
         // Calculate distance if coordinates are provided
         if (request.getPickupLatitude() != null && request.getDropoffLatitude() != null) {
-            double distance = calculateDistance(
+            double distance = GeoMath.haversineKm(
                 request.getPickupLatitude(), request.getPickupLongitude(),
                 request.getDropoffLatitude(), request.getDropoffLongitude()
             );
             ride.setDistance(distance);
-            ride.setDuration(calculateDuration(distance));
+            ride.setDuration(etaService.estimateTripMinutes(
+                request.getPickupLatitude(), request.getPickupLongitude(),
+                request.getDropoffLatitude(), request.getDropoffLongitude()
+            ));
         }
         
         // Parse scheduled datetime
@@ -134,6 +198,7 @@ public class RideService {
         }
         
         ride = rideRepository.save(ride);
+        platformMetrics.rideStatusChanged(null, Ride.RideStatus.REQUESTED);
         
         // Notify user immediately that their booking is registered
         notificationService.createNotification(
@@ -165,6 +230,49 @@ public class RideService {
         return rideRepository.findByDriverIdOrderByCreatedAtDesc(driverId);
     }
     
+    public CursorPage<RideResponse> getRiderRidesPage(Long riderId, String cursor, int limit) {
+        return historyPage("riderId", riderId, cursor, limit);
+    }
+    
+    public CursorPage<RideResponse> getDriverRidesPage(Long driverId, String cursor, int limit) {
+        return historyPage("driverId", driverId, cursor, limit);
+    }
+    
+    // Keyset page over (createdAt desc, id desc); served by the rider_history / driver_history indexes
+    private CursorPage<RideResponse> historyPage(String ownerField, Long ownerId, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        
+        Criteria criteria = Criteria.where(ownerField).is(ownerId);
+        if (after != null && after.timestamp() != null) {
+            // Older rows, ties on createdAt broken by id, then the legacy rows with no createdAt (sorted last)
+            criteria = criteria.orOperator(
+                Criteria.where("createdAt").lt(after.timestamp()),
+                Criteria.where("createdAt").is(after.timestamp()).and("id").lt(after.id()),
+                Criteria.where("createdAt").is(null)
+            );
+        } else if (after != null) {
+            criteria = criteria.and("createdAt").is(null).and("id").lt(after.id());
+        }
+        
+        // One extra row tells us whether another page exists
+        Query query = new Query(criteria)
+            .with(Sort.by(Sort.Direction.DESC, "createdAt", "id"))
+            .limit(pageSize + 1);
+        List<Ride> rides = mongoTemplate.find(query, Ride.class);
+        
+        boolean hasMore = rides.size() > pageSize;
+        if (hasMore) {
+            rides = rides.subList(0, pageSize);
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            Ride last = rides.get(rides.size() - 1);
+            nextCursor = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new CursorPage<>(convertToResponseList(rides), nextCursor, hasMore);
+    }
+    
     public List<Ride> getRidesByStatus(Ride.RideStatus status) {
         return rideRepository.findByStatus(status);
     }
@@ -177,30 +285,54 @@ public class RideService {
     }
     
     public Ride acceptRide(Long rideId, Long driverId) {
-        Ride ride = getRideById(rideId);
-        
-        if (ride.getStatus() != Ride.RideStatus.REQUESTED) {
-            throw new RuntimeException("Ride is not available");
+        // Claim the ride with one conditional write; of any number of concurrent accepts only one matches REQUESTED
+        Query openRide = new Query(Criteria.where("id").is(rideId).and("status").is(Ride.RideStatus.REQUESTED));
+        Update claim = new Update()
+            .set("status", Ride.RideStatus.ACCEPTED)
+            .set("driverId", driverId)
+            .set("acceptedAt", LocalDateTime.now());
+        
+        Ride ride = mongoTemplate.findAndModify(openRide, claim, FindAndModifyOptions.options().returnNew(true), Ride.class);
+        if (ride == null) {
+            if (!mongoTemplate.exists(new Query(Criteria.where("id").is(rideId)), Ride.class)) {
+                throw new RuntimeException("Ride not found");
+            }
+            throw new RideAlreadyTakenException(rideId);
         }
         
         Optional<Driver> driverOpt = driverRepository.findById(driverId);
         if (driverOpt.isEmpty()) {
+            // Hand the ride back so another driver can take it
+            mongoTemplate.updateFirst(
+                new Query(Criteria.where("id").is(rideId).and("driverId").is(driverId)),
+                new Update().set("status", Ride.RideStatus.REQUESTED).unset("driverId").unset("acceptedAt"),
+                Ride.class
+            );
             throw new RuntimeException("Driver not found");
         }
         
         Driver driver = driverOpt.get();
+        surgePricingService.recordRideClosed(ride.getPickupLatitude(), ride.getPickupLongitude());
+        platformMetrics.rideStatusChanged(Ride.RideStatus.REQUESTED, Ride.RideStatus.ACCEPTED);
         
-        ride.setDriverId(driverId);
         ride.setDriverName(driver.getName());
         ride.setVehicleNumber(driver.getVehicleNumber());
-        ride.setStatus(Ride.RideStatus.ACCEPTED);
-        ride.setAcceptedAt(LocalDateTime.now());
-        
-        ride = rideRepository.save(ride);
+        mongoTemplate.updateFirst(
+            new Query(Criteria.where("id").is(rideId)),
+            new Update().set("driverName", driver.getName()).set("vehicleNumber", driver.getVehicleNumber()),
+            Ride.class
+        );
         
         // Update driver status
+        Driver.DriverStatus previousStatus = driver.getStatus();
         driver.setStatus(Driver.DriverStatus.BUSY);
-        driverRepository.save(driver);
+        mongoTemplate.updateFirst(
+            new Query(Criteria.where("id").is(driverId)),
+            new Update().set("status", Driver.DriverStatus.BUSY),
+            Driver.class
+        );
+        driverLocationService.syncDriver(driver);
+        platformMetrics.driverStatusChanged(previousStatus, Driver.DriverStatus.BUSY);
         
         // Notify rider
         notificationService.createNotification(
@@ -223,10 +355,12 @@ public class RideService {
             throw new RuntimeException("Ride must be accepted before starting");
         }
         
-        ride.setStatus(Ride.RideStatus.STARTED);
-        ride.setStartedAt(LocalDateTime.now());
-        
-        ride = rideRepository.save(ride);
+        ride = transition(rideId, Ride.RideStatus.ACCEPTED,
+            new Update().set("status", Ride.RideStatus.STARTED).set("startedAt", LocalDateTime.now()));
+        if (ride == null) {
+            throw new RuntimeException("Ride must be accepted before starting");
+        }
+        platformMetrics.rideStatusChanged(Ride.RideStatus.ACCEPTED, Ride.RideStatus.STARTED);
         
         // Notify rider
         notificationService.createNotification(
@@ -253,10 +387,12 @@ public class RideService {
             throw new RuntimeException("Invalid OTP");
         }
         
-        ride.setStatus(Ride.RideStatus.STARTED);
-        ride.setStartedAt(LocalDateTime.now());
-        
-        ride = rideRepository.save(ride);
+        ride = transition(rideId, Ride.RideStatus.ACCEPTED,
+            new Update().set("status", Ride.RideStatus.STARTED).set("startedAt", LocalDateTime.now()));
+        if (ride == null) {
+            throw new RuntimeException("Ride must be in ACCEPTED status to verify OTP");
+        }
+        platformMetrics.rideStatusChanged(Ride.RideStatus.ACCEPTED, Ride.RideStatus.STARTED);
         
         // Notify rider that ride has started
         notificationService.createNotification(
@@ -279,10 +415,19 @@ public class RideService {
             throw new RuntimeException("Ride must be started before completing");
         }
         
-        ride.setStatus(Ride.RideStatus.COMPLETED);
-        ride.setCompletedAt(LocalDateTime.now());
+        ride = transition(rideId, Ride.RideStatus.STARTED,
+            new Update().set("status", Ride.RideStatus.COMPLETED).set("completedAt", LocalDateTime.now()));
+        if (ride == null) {
+            throw new RuntimeException("Ride must be started before completing");
+        }
+        etaService.recordCompletedRide(ride);
+        platformMetrics.rideStatusChanged(Ride.RideStatus.STARTED, Ride.RideStatus.COMPLETED);
+        platformMetrics.revenueRecorded(ride.getFare());
         
-        ride = rideRepository.save(ride);
+        // With Kafka on, EarningsConsumer does this off the request path
+        if (!kafkaEnabled) {
+            earningsRollupService.recordCompletedRide(ride.getId());
+        }
         
         // 1. Immediately emit the Kafka Event-Driven Architecture signal before heavy synchronous blocks occur.
         // Payment, Earnings, Analytics, and Notifications will now be handled asynchronously.
@@ -299,35 +444,52 @@ public class RideService {
     }
     
     public Ride cancelRide(Long rideId, Long userId, String reason) {
-        Ride ride = getRideById(rideId);
+        // Guarded on the status just read: a cancel that loses to an accept re-reads and cancels the
+        // accepted ride, so the claim is never overwritten and its driver is released below
+        Ride ride = null;
+        Ride.RideStatus previousStatus = null;
+        while (ride == null) {
+            Ride current = getRideById(rideId);
+            
+            if (current.getStatus() == Ride.RideStatus.COMPLETED || 
+                current.getStatus() == Ride.RideStatus.CANCELLED) {
+                throw new RuntimeException("Ride cannot be cancelled");
+            }
+            
+            previousStatus = current.getStatus();
+            Update cancel = new Update()
+                .set("status", Ride.RideStatus.CANCELLED)
+                .set("cancelledAt", LocalDateTime.now())
+                .set("cancellationReason", reason);
+            
+            // Determine who cancelled
+            if (userId.equals(current.getRiderId())) {
+                cancel.set("cancelledBy", "Rider");
+            } else if (userId.equals(current.getDriverId())) {
+                cancel.set("cancelledBy", "Driver");
+            }
+            ride = transition(rideId, previousStatus, cancel);
+        }
         
-        if (ride.getStatus() == Ride.RideStatus.COMPLETED || 
-            ride.getStatus() == Ride.RideStatus.CANCELLED) {
-            throw new RuntimeException("Ride cannot be cancelled");
+        if (previousStatus == Ride.RideStatus.REQUESTED) {
+            surgePricingService.recordRideClosed(ride.getPickupLatitude(), ride.getPickupLongitude());
         }
+        platformMetrics.rideStatusChanged(previousStatus, Ride.RideStatus.CANCELLED);
         
-        ride.setStatus(Ride.RideStatus.CANCELLED);
-        ride.setCancelledAt(LocalDateTime.now());
-        ride.setCancellationReason(reason);
-        
-        // Determine who cancelled
-        if (userId.equals(ride.getRiderId())) {
-            ride.setCancelledBy("Rider");
-        } else if (userId.equals(ride.getDriverId())) {
-            ride.setCancelledBy("Driver");
-            // If driver cancels, make driver available again
-            if (ride.getDriverId() != null) {
-                Optional<Driver> driverOpt = driverRepository.findById(ride.getDriverId());
-                if (driverOpt.isPresent()) {
-                    Driver driver = driverOpt.get();
-                    driver.setStatus(Driver.DriverStatus.AVAILABLE);
-                    driverRepository.save(driver);
-                }
+        // Whoever cancelled, the assigned driver is free again
+        if (ride.getDriverId() != null) {
+            Driver driver = mongoTemplate.findAndModify(
+                new Query(Criteria.where("id").is(ride.getDriverId()).and("status").is(Driver.DriverStatus.BUSY)),
+                new Update().set("status", Driver.DriverStatus.AVAILABLE),
+                FindAndModifyOptions.options().returnNew(true),
+                Driver.class
+            );
+            if (driver != null) {
+                driverLocationService.syncDriver(driver);
+                platformMetrics.driverStatusChanged(Driver.DriverStatus.BUSY, Driver.DriverStatus.AVAILABLE);
             }
         }
         
-        ride = rideRepository.save(ride);
-        
         // Notify parties
         if (ride.getRiderId() != null && !userId.equals(ride.getRiderId())) {
             notificationService.createNotification(
@@ -354,41 +516,21 @@ public class RideService {
         return ride;
     }
     
-    public Ride rateRide(Long rideId, Integer rating) {
-        Ride ride = getRideById(rideId);
-        
-        if (ride.getStatus() != Ride.RideStatus.COMPLETED) {
-            throw new RuntimeException("Only completed rides can be rated");
-        }
-        
-        ride.setRating(rating);
-        ride = rideRepository.save(ride);
-        
-        // Update driver rating
-        if (ride.getDriverId() != null) {
-            updateDriverRating(ride.getDriverId());
-        }
-        
-        return ride;
+    // Moves a ride out of `from` with one conditional write; null when it was no longer in `from`
+    private Ride transition(Long rideId, Ride.RideStatus from, Update update) {
+        return mongoTemplate.findAndModify(
+            new Query(Criteria.where("id").is(rideId).and("status").is(from)),
+            update,
+            FindAndModifyOptions.options().returnNew(true),
+            Ride.class
+        );
     }
     
-    private void updateDriverRating(Long driverId) {
-        List<Ride> completedRides = rideRepository.findByDriverIdAndStatus(
-            driverId, Ride.RideStatus.COMPLETED
-        );
-        
-        double avgRating = completedRides.stream()
-            .filter(r -> r.getRating() != null)
-            .mapToInt(Ride::getRating)
-            .average()
-            .orElse(0.0);
-        
-        Optional<Driver> driverOpt = driverRepository.findById(driverId);
-        if (driverOpt.isPresent()) {
-            Driver driver = driverOpt.get();
-            driver.setRating(avgRating);
-            driverRepository.save(driver);
+    public Ride rateRide(Long rideId, Integer rating) {
+        if (rating == null) {
+            throw new RuntimeException("Rating is required");
         }
+        return driverRatingService.rateRide(rideId, rating);
     }
     
     private String generateOTP() {
@@ -404,43 +546,21 @@ public class RideService {
         }
     }
     
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371; // Radius of the earth in km
-        
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        
-        return R * c; // Distance in km
-    }
-    
-    private int calculateDuration(double distanceKm) {
-        // Assume average speed of 30 km/h
-        return (int) Math.ceil((distanceKm / 30.0) * 60);
-    }
-    
-    private double calculateFare(double distanceKm, String vehicleType) {
-        double baseFare = 40;
-        double perKm = 15;
-        
-        if ("Bike".equalsIgnoreCase(vehicleType)) {
-            baseFare = 20;
-            perKm = 10;
-        } else if ("SUV".equalsIgnoreCase(vehicleType)) {
-            baseFare = 60;
-            perKm = 20;
-        } else if ("Van".equalsIgnoreCase(vehicleType)) {
-            baseFare = 80;
-            perKm = 25;
-        } else if ("Auto".equalsIgnoreCase(vehicleType)) {
-            baseFare = 25;
-            perKm = 12;
+    private void offerToNearbyDrivers(Ride ride) {
+        if (ride.getPickupLatitude() == null || ride.getPickupLongitude() == null) return;
+        try {
+            List<NearbyDriverDto> nearbyDrivers = driverLocationService.searchNearbyDriversAdaptive(
+                ride.getPickupLatitude(),
+                ride.getPickupLongitude(),
+                DRIVERS_TO_NOTIFY,
+                List.of(VehicleType.fromLabelOrDefault(ride.getVehicleType()))
+            ).getDrivers();
+            etaService.annotate(nearbyDrivers, ride.getPickupLatitude(), ride.getPickupLongitude());
+            rideNotificationService.notifyDriversOfNewRide(convertToResponse(ride), nearbyDrivers);
+        } catch (Exception e) {
+            // Drivers can still find the ride through GET /api/rides/requests
+            System.err.println("Failed to push ride " + ride.getId() + " to nearby drivers: " + e.getMessage());
         }
-        
-        return baseFare + (distanceKm * perKm);
     }
     
     public List<RideResponse> convertToResponseList(List<Ride> rides) {
@@ -0,0 +1,232 @@
+package com.takeme.service;
+
+import com.takeme.model.Ride;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Supply/demand surge per geo cell. Ride requests land in a per-cell sliding window of time
+ * buckets, open (unaccepted) requests and AVAILABLE drivers are live gauges, and every event
+ * recomputes just the multiplier of the cell it touched. Fare code reads the published
+ * multiplier with a single map lookup and never touches Mongo. A periodic tick re-evaluates
+ * cells whose window has aged out and forgets idle ones, and a slower one resets the open-request
+ * gauges from the REQUESTED rides actually in Mongo, so rides that are abandoned without being
+ * accepted or cancelled stop counting as demand.
+ */
+@Service
+public class SurgePricingService {
+
+    // 0.02 degrees is roughly 2.2 km
+    @Value("${app.surge.cell-size-degrees:0.02}")
+    private double cellSizeDegrees;
+
+    @Value("${app.surge.window-buckets:10}")
+    private int windowBuckets;
+
+    @Value("${app.surge.bucket-ms:30000}")
+    private long bucketMs;
+
+    // Demand per available driver at which surge starts
+    @Value("${app.surge.threshold:1.0}")
+    private double threshold;
+
+    // Multiplier added per unit of demand/supply above the threshold
+    @Value("${app.surge.sensitivity:0.25}")
+    private double sensitivity;
+
+    @Value("${app.surge.max-multiplier:2.5}")
+    private double maxMultiplier;
+
+    // A REQUESTED ride older than this is treated as abandoned and no longer counts as open demand
+    @Value("${app.surge.open-request-max-age-ms:600000}")
+    private long openRequestMaxAgeMs;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final ConcurrentHashMap<Long, CellState> cells = new ConcurrentHashMap<>();
+
+    // driverId -> cell the driver is counted as supply in
+    private final ConcurrentHashMap<Long, Long> driverCells = new ConcurrentHashMap<>();
+
+    /**
+     * Current multiplier at a point (1.0 when there is no surge). O(1).
+     */
+    public double multiplierAt(double latitude, double longitude) {
+        CellState cell = cells.get(cellKey(latitude, longitude));
+        return cell != null ? cell.multiplier : 1.0;
+    }
+
+    public void recordRideRequested(Double latitude, Double longitude) {
+        if (latitude == null || longitude == null) return;
+        long epoch = System.currentTimeMillis() / bucketMs;
+        update(cellKey(latitude, longitude), cell -> {
+            cell.recordRequest(epoch);
+            cell.openRequests.incrementAndGet();
+        });
+    }
+
+    /**
+     * A REQUESTED ride left the open pool (accepted or cancelled).
+     */
+    public void recordRideClosed(Double latitude, Double longitude) {
+        if (latitude == null || longitude == null) return;
+        updateIfPresent(cellKey(latitude, longitude),
+            cell -> cell.openRequests.updateAndGet(open -> Math.max(0, open - 1)));
+    }
+
+    /**
+     * Keeps the supply gauges in step with a driver's position and availability.
+     */
+    public void updateDriverSupply(Long driverId, double latitude, double longitude, boolean available) {
+        if (driverId == null) return;
+        long target = cellKey(latitude, longitude);
+
+        // compute() serialises updates for one driver, so the +1/-1 pair never interleaves
+        driverCells.compute(driverId, (id, previous) -> {
+            if (previous != null && (!available || previous != target)) {
+                updateIfPresent(previous, old -> old.availableDrivers.decrementAndGet());
+            }
+            if (!available) return null;
+            if (previous == null || previous != target) {
+                update(target, cell -> cell.availableDrivers.incrementAndGet());
+            }
+            return target;
+        });
+    }
+
+    public void removeDriver(Long driverId) {
+        if (driverId == null) return;
+        driverCells.computeIfPresent(driverId, (id, previous) -> {
+            updateIfPresent(previous, old -> old.availableDrivers.decrementAndGet());
+            return null;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.surge.bucket-ms:30000}")
+    public void refresh() {
+        long epoch = System.currentTimeMillis() / bucketMs;
+        for (Long key : cells.keySet()) {
+            // The idle check and the removal run under the same bin lock as update(), so an event
+            // racing with eviction either lands before it (and keeps the cell) or recreates it
+            cells.computeIfPresent(key, (k, cell) -> {
+                recompute(cell);
+                boolean idle = cell.availableDrivers.get() <= 0 && cell.openRequests.get() <= 0
+                        && cell.recentRequests(epoch) == 0;
+                return idle ? null : cell;
+            });
+        }
+    }
+
+    /**
+     * Replaces every cell's open-request gauge with the number of recent REQUESTED rides picked up
+     * in it. A request recorded while this runs may be counted out until the next pass; the
+     * windowed request count still covers it in the meantime.
+     */
+    @Scheduled(fixedDelayString = "${app.surge.reconcile-ms:60000}")
+    public void reconcileOpenRequests() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(Duration.ofMillis(openRequestMaxAgeMs));
+        Query open = new Query(Criteria.where("status").is(Ride.RideStatus.REQUESTED)
+                .and("createdAt").gte(cutoff)
+                .and("isScheduled").ne(true)
+                .and("pickupLatitude").ne(null)
+                .and("pickupLongitude").ne(null));
+        open.fields().include("pickupLatitude").include("pickupLongitude");
+
+        Map<Long, Integer> openPerCell = new HashMap<>();
+        try (Stream<Ride> rides = mongoTemplate.stream(open, Ride.class)) {
+            rides.forEach(ride -> openPerCell.merge(cellKey(ride.getPickupLatitude(), ride.getPickupLongitude()), 1, Integer::sum));
+        }
+
+        for (Long key : cells.keySet()) {
+            if (!openPerCell.containsKey(key)) {
+                updateIfPresent(key, cell -> cell.openRequests.set(0));
+            }
+        }
+        openPerCell.forEach((key, count) -> update(key, cell -> cell.openRequests.set(count)));
+    }
+
+    private void recompute(CellState cell) {
+        long epoch = System.currentTimeMillis() / bucketMs;
+        double demand = Math.max(cell.recentRequests(epoch), cell.openRequests.get());
+        double supply = Math.max(1, cell.availableDrivers.get());
+        double excess = demand / supply - threshold;
+
+        double multiplier = excess <= 0 ? 1.0 : Math.min(maxMultiplier, 1.0 + sensitivity * excess);
+        // Publish in 0.1 steps so quotes do not jitter with every event
+        cell.multiplier = Math.round(multiplier * 10) / 10.0;
+    }
+
+    // Every counter change goes through compute so it cannot interleave with refresh() evicting the cell
+    private void update(long key, Consumer<CellState> change) {
+        cells.compute(key, (k, cell) -> {
+            if (cell == null) cell = new CellState(windowBuckets);
+            change.accept(cell);
+            recompute(cell);
+            return cell;
+        });
+    }
+
+    private void updateIfPresent(long key, Consumer<CellState> change) {
+        cells.computeIfPresent(key, (k, cell) -> {
+            change.accept(cell);
+            recompute(cell);
+            return cell;
+        });
+    }
+
+    private long cellKey(double latitude, double longitude) {
+        int latIdx = (int) Math.floor(latitude / cellSizeDegrees);
+        int lngIdx = (int) Math.floor(longitude / cellSizeDegrees);
+        return ((long) latIdx << 32) | (lngIdx & 0xffffffffL);
+    }
+
+    private static final class CellState {
+        // Ring of request counts; epochs[i] says which time bucket counts[i] belongs to
+        final AtomicLongArray counts;
+        final AtomicLongArray epochs;
+        final AtomicInteger openRequests = new AtomicInteger();
+        final AtomicInteger availableDrivers = new AtomicInteger();
+        volatile double multiplier = 1.0;
+
+        CellState(int buckets) {
+            counts = new AtomicLongArray(buckets);
+            epochs = new AtomicLongArray(buckets);
+        }
+
+        void recordRequest(long epoch) {
+            int slot = (int) (epoch % counts.length());
+            long seen = epochs.get(slot);
+            // First writer into a recycled bucket resets it; losers just add to the fresh count
+            if (seen != epoch && epochs.compareAndSet(slot, seen, epoch)) {
+                counts.set(slot, 0);
+            }
+            counts.incrementAndGet(slot);
+        }
+
+        long recentRequests(long epoch) {
+            long total = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                if (epoch - epochs.get(i) < counts.length()) {
+                    total += counts.get(i);
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.takeme.service;
+
+import com.takeme.repository.NotificationRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-user unread notification counts, so badge polling never touches the notifications table.
+ * A user's count is loaded on first use from one COUNT plus their rows still queued in the
+ * write-behind sink, then kept up to date: +1 when a notification is submitted, -1 when one is
+ * read, 0 on mark-all-read. The least recently used users are evicted once the cache is full and
+ * simply reload on their next poll.
+ */
+@Service
+public class UnreadNotificationCounter {
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private NotificationWriteBehindSink notificationSink;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.notifications.unread-cache-size:100000}")
+    private int cacheSize;
+
+    private Map<Long, Long> counts;
+
+    @PostConstruct
+    public void init() {
+        // Access-ordered LinkedHashMap; every access reorders, so all use is under its own lock
+        counts = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        Gauge.builder("notifications.unread.cache.size", this, counter -> counter.size())
+                .description("Users with a cached unread notification count")
+                .register(meterRegistry);
+        notificationSink.onQueued(this::increment);
+    }
+
+    public long get(Long userId) {
+        synchronized (counts) {
+            Long cached = counts.get(userId);
+            if (cached != null) return cached;
+        }
+
+        // Miss: the sink holds submits back while the total is installed, so a notification created
+        // during the load is either in the total or applied by increment() afterwards, never both
+        long[] loaded = new long[1];
+        notificationSink.countSubmitted(userId, () -> notificationRepository.countByUserIdAndIsRead(userId, false),
+                unread -> {
+                    synchronized (counts) {
+                        Long raced = counts.putIfAbsent(userId, unread);
+                        loaded[0] = raced != null ? raced : unread;
+                    }
+                });
+        return loaded[0];
+    }
+
+    // Only users with a loaded count are tracked; anyone else gets an exact COUNT on their next poll.
+    // Called by the sink for every submitted notification
+    public void increment(Long userId) {
+        synchronized (counts) {
+            counts.computeIfPresent(userId, (id, count) -> count + 1);
+        }
+    }
+
+    public void decrement(Long userId) {
+        synchronized (counts) {
+            counts.computeIfPresent(userId, (id, count) -> Math.max(0, count - 1));
+        }
+    }
+
+    public void reset(Long userId) {
+        synchronized (counts) {
+            counts.put(userId, 0L);
+        }
+    }
+
+    public void evict(Long userId) {
+        synchronized (counts) {
+            counts.remove(userId);
+        }
+    }
+
+    public int size() {
+        synchronized (counts) {
+            return counts.size();
+        }
+    }
+}
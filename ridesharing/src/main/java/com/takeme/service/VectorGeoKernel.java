@@ -0,0 +1,46 @@
+package com.takeme.service;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API version of the batch haversine. Only loaded through {@link GeoMath} once it has
+ * checked the incubator module is present.
+ */
+final class VectorGeoKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private static final double DEG_TO_RAD = Math.PI / 180.0;
+
+    private VectorGeoKernel() {
+    }
+
+    // Below a couple of full vectors the scalar loop is just as fast
+    static int minBatch() {
+        return SPECIES.length() * 2;
+    }
+
+    static void haversineKm(double originLat, double originLng,
+                            double[] lats, double[] lngs, int count, double[] outKm) {
+        double cosOrigin = Math.cos(originLat * DEG_TO_RAD);
+        int bound = SPECIES.loopBound(count);
+
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector lat = DoubleVector.fromArray(SPECIES, lats, i);
+            DoubleVector lng = DoubleVector.fromArray(SPECIES, lngs, i);
+
+            DoubleVector sinLat = lat.sub(originLat).mul(DEG_TO_RAD * 0.5).lanewise(VectorOperators.SIN);
+            DoubleVector sinLon = lng.sub(originLng).mul(DEG_TO_RAD * 0.5).lanewise(VectorOperators.SIN);
+            DoubleVector cosLat = lat.mul(DEG_TO_RAD).lanewise(VectorOperators.COS);
+
+            DoubleVector a = sinLat.mul(sinLat).add(cosLat.mul(cosOrigin).mul(sinLon).mul(sinLon));
+            DoubleVector c = a.sqrt().lanewise(VectorOperators.ATAN2, a.neg().add(1.0).sqrt()).mul(2.0);
+            c.mul(GeoMath.EARTH_RADIUS_KM).intoArray(outKm, i);
+        }
+
+        GeoMath.scalarHaversineKm(originLat, originLng, lats, lngs, i, count, outKm);
+    }
+}
@@ -3,41 +3,46 @@ package com.takeme.service;
 import com.takeme.model.Transaction;
 import com.takeme.model.Rider;
 import com.takeme.model.Driver;
+import com.takeme.model.WalletLedgerEntry;
 import com.takeme.repository.TransactionRepository;
-import com.takeme.repository.RiderRepository;
-import com.takeme.repository.DriverRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
 @Service
 public class WalletService {
     
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
     @Autowired
     private TransactionRepository transactionRepository;
     
     @Autowired
-    private RiderRepository riderRepository;
+    private NotificationService notificationService;
     
     @Autowired
-    private DriverRepository driverRepository;
+    private PlatformMetricsRegistry platformMetrics;
     
     @Autowired
-    private NotificationService notificationService;
+    private WalletSnapshotService walletSnapshotService;
     
     public Double getWalletBalance(Long userId, String role) {
-        if ("Driver".equalsIgnoreCase(role)) {
-            return driverRepository.findById(userId)
-                .map(Driver::getWalletBalance)
-                .orElse(0.0);
-        } else {
-            return riderRepository.findById(userId)
-                .map(Rider::getWalletBalance)
-                .orElse(0.0);
-        }
+        WalletLedgerEntry.AccountType accountType = "Driver".equalsIgnoreCase(role)
+            ? WalletLedgerEntry.AccountType.DRIVER : WalletLedgerEntry.AccountType.RIDER;
+        Double balance = walletSnapshotService.currentBalance(accountType, userId);
+        return balance != null ? balance : 0.0;
     }
     
     @Transactional
@@ -46,17 +51,19 @@ public class WalletService {
             throw new RuntimeException("Invalid amount");
         }
         
+        String transactionId = "TXN" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        
         // Update wallet balance
         if ("Driver".equalsIgnoreCase(role)) {
-            Driver driver = driverRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Driver not found"));
-            driver.setWalletBalance(driver.getWalletBalance() + amount);
-            driverRepository.save(driver);
+            if (applyToWallet(WalletLedgerEntry.AccountType.DRIVER, userId, amount,
+                    WalletLedgerEntry.EntryType.RECHARGE, transactionId) == null) {
+                throw new RuntimeException("Driver not found");
+            }
         } else {
-            Rider rider = riderRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-            rider.setWalletBalance(rider.getWalletBalance() + amount);
-            riderRepository.save(rider);
+            if (applyToWallet(WalletLedgerEntry.AccountType.RIDER, userId, amount,
+                    WalletLedgerEntry.EntryType.RECHARGE, transactionId) == null) {
+                throw new RuntimeException("User not found");
+            }
         }
         
         // Create transaction record
@@ -66,10 +73,11 @@ public class WalletService {
         transaction.setAmount(amount);
         transaction.setStatus(Transaction.TransactionStatus.COMPLETED);
         transaction.setPaymentMethod(paymentMethod);
-        transaction.setTransactionId("TXN" + UUID.randomUUID().toString().substring(0, 8).toUpperCase());
+        transaction.setTransactionId(transactionId);
         transaction.setDescription("Wallet recharge");
         
         transaction = transactionRepository.save(transaction);
+        platformMetrics.transactionRecorded();
         
         // Send notification
         notificationService.createNotification(
@@ -95,24 +103,143 @@ public class WalletService {
         transaction.setDescription("Ride payment #" + rideId);
         
         if ("WALLET".equalsIgnoreCase(paymentMethod)) {
-            Rider rider = riderRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+            if (amount == null || amount <= 0) {
+                throw new RuntimeException("Invalid amount");
+            }
             
-            if (rider.getWalletBalance() < amount) {
+            // The balance check and the debit are one conditional update, so concurrent payments cannot overdraw
+            WalletLedgerEntry debit = applyToWallet(WalletLedgerEntry.AccountType.RIDER, userId, -amount,
+                WalletLedgerEntry.EntryType.RIDE_PAYMENT, transaction.getTransactionId());
+            if (debit == null) {
+                if (!mongoTemplate.exists(new Query(accountCriteria(WalletLedgerEntry.AccountType.RIDER, userId)), Rider.class)) {
+                    throw new RuntimeException("User not found");
+                }
                 transaction.setStatus(Transaction.TransactionStatus.FAILED);
                 transactionRepository.save(transaction);
+                platformMetrics.transactionRecorded();
                 throw new RuntimeException("Insufficient wallet balance");
             }
-            
-            rider.setWalletBalance(rider.getWalletBalance() - amount);
-            riderRepository.save(rider);
             transaction.setStatus(Transaction.TransactionStatus.COMPLETED);
         } else {
             // For other payment methods (UPI, CARD, CASH), mark as completed
             transaction.setStatus(Transaction.TransactionStatus.COMPLETED);
         }
         
-        return transactionRepository.save(transaction);
+        transaction = transactionRepository.save(transaction);
+        platformMetrics.transactionRecorded();
+        return transaction;
+    }
+    
+    /**
+     * Moves an account's balance by delta. The ledger entry for the next seq is inserted first as
+     * PENDING (the unique account/seq index lets only one writer claim a seq), then applied to the
+     * account with one findAndModify: $inc on walletBalance and walletSeq, guarded by walletSeq
+     * still being the one before the entry and, for debits, walletBalance >= -delta. Applying is
+     * idempotent by seq, so a writer that finds a PENDING entry left on its seq finishes it before
+     * claiming the next one. Returns null if the account does not exist or a debit would overdraw
+     * it, in which case nothing was changed.
+     */
+    private WalletLedgerEntry applyToWallet(WalletLedgerEntry.AccountType accountType, Long accountId, double delta,
+                                            WalletLedgerEntry.EntryType type, String reference) {
+        while (true) {
+            WalletPosition before = position(accountType, accountId);
+            if (before == null) return null;
+            if (delta < 0 && before.balance() < -delta) return null;
+            
+            // The seq pins the balance this entry applies to, so balanceAfter is known up front
+            WalletLedgerEntry entry = new WalletLedgerEntry(null, accountType, accountId, before.seq() + 1, delta,
+                before.balance() + delta, type, reference, LocalDateTime.now(), WalletLedgerEntry.Status.PENDING);
+            try {
+                entry = mongoTemplate.insert(entry);
+            } catch (DuplicateKeyException e) {
+                // Another writer holds this seq; finish its entry if it is still pending, then re-read
+                WalletLedgerEntry holder = mongoTemplate.findOne(new Query(ledgerCriteria(accountType, accountId)
+                    .and("seq").is(before.seq() + 1)), WalletLedgerEntry.class);
+                if (holder != null && holder.getStatus() == WalletLedgerEntry.Status.PENDING) {
+                    settle(holder);
+                }
+                continue;
+            }
+            
+            if (settle(entry)) {
+                entry.setStatus(WalletLedgerEntry.Status.APPLIED);
+                return entry;
+            }
+            // Withdrawn because the balance did not cover it; re-read, which declines it unless the account moved
+        }
+    }
+    
+    /**
+     * Applies a PENDING entry to its account unless that already happened, and marks it APPLIED.
+     * Returns false, after deleting the entry, if it cannot apply.
+     */
+    private boolean settle(WalletLedgerEntry entry) {
+        WalletLedgerEntry.AccountType accountType = entry.getAccountType();
+        long previousSeq = entry.getSeq() - 1;
+        // Accounts that predate the ledger have no walletSeq field until their first movement
+        Criteria criteria = accountCriteria(accountType, entry.getAccountId()).and("walletSeq")
+            .in(previousSeq == 0 ? Arrays.asList(0L, null) : List.of(previousSeq));
+        if (entry.getDelta() < 0) {
+            criteria = criteria.and("walletBalance").gte(-entry.getDelta());
+        }
+        Update update = new Update().inc("walletBalance", entry.getDelta()).inc("walletSeq", 1);
+        
+        if (increment(accountType, criteria, update) == null) {
+            WalletPosition now = position(accountType, entry.getAccountId());
+            if (now == null || now.seq() < entry.getSeq()) {
+                mongoTemplate.remove(new Query(Criteria.where("id").is(entry.getId())
+                    .and("status").is(WalletLedgerEntry.Status.PENDING)), WalletLedgerEntry.class);
+                return false;
+            }
+            // The account is past this seq: applied by an earlier attempt, unless this entry was
+            // withdrawn and another one took its seq, in which case there is nothing left to mark
+        }
+        
+        try {
+            return mongoTemplate.updateFirst(new Query(Criteria.where("id").is(entry.getId())),
+                new Update().set("status", WalletLedgerEntry.Status.APPLIED), WalletLedgerEntry.class).getMatchedCount() == 1;
+        } catch (RuntimeException e) {
+            // The money has moved and walletSeq records it; the entry counts whatever its status says
+            System.err.println("Could not mark wallet ledger entry " + entry.getId() + " applied: " + e.getMessage());
+            return true;
+        }
+    }
+    
+    private WalletPosition position(WalletLedgerEntry.AccountType accountType, Long accountId) {
+        Query query = new Query(accountCriteria(accountType, accountId));
+        query.fields().include("walletBalance").include("walletSeq");
+        if (accountType == WalletLedgerEntry.AccountType.DRIVER) {
+            Driver driver = mongoTemplate.findOne(query, Driver.class);
+            return driver != null ? WalletPosition.of(driver.getWalletBalance(), driver.getWalletSeq()) : null;
+        }
+        Rider rider = mongoTemplate.findOne(query, Rider.class);
+        return rider != null ? WalletPosition.of(rider.getWalletBalance(), rider.getWalletSeq()) : null;
+    }
+    
+    private WalletPosition increment(WalletLedgerEntry.AccountType accountType, Criteria criteria, Update update) {
+        FindAndModifyOptions returnNew = FindAndModifyOptions.options().returnNew(true);
+        if (accountType == WalletLedgerEntry.AccountType.DRIVER) {
+            Driver driver = mongoTemplate.findAndModify(new Query(criteria), update, returnNew, Driver.class);
+            return driver != null ? WalletPosition.of(driver.getWalletBalance(), driver.getWalletSeq()) : null;
+        }
+        Rider rider = mongoTemplate.findAndModify(new Query(criteria), update, returnNew, Rider.class);
+        return rider != null ? WalletPosition.of(rider.getWalletBalance(), rider.getWalletSeq()) : null;
+    }
+    
+    private record WalletPosition(double balance, long seq) {
+        static WalletPosition of(Double balance, Long seq) {
+            return new WalletPosition(balance != null ? balance : 0.0, seq != null ? seq : 0L);
+        }
+    }
+    
+    private static Criteria ledgerCriteria(WalletLedgerEntry.AccountType accountType, Long accountId) {
+        return Criteria.where("accountType").is(accountType).and("accountId").is(accountId);
+    }
+    
+    // Rider documents have String ids
+    private static Criteria accountCriteria(WalletLedgerEntry.AccountType accountType, Long accountId) {
+        return Criteria.where("id").is(accountType == WalletLedgerEntry.AccountType.DRIVER
+            ? accountId : String.valueOf(accountId));
     }
     
     public List<Transaction> getTransactionHistory(Long userId) {
@@ -0,0 +1,350 @@
+package com.takeme.service;
+
+import com.takeme.model.Driver;
+import com.takeme.model.Rider;
+import com.takeme.model.WalletBalanceSnapshot;
+import com.takeme.model.WalletLedgerEntry;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Per-account wallet balance snapshots over the wallet ledger. Balance reads are one snapshot
+ * lookup plus a sum over the few ledger entries written since, checked against the account's
+ * walletSeq; when the ledger cannot vouch for the balance, the account's walletBalance is used. The periodic pass walks every
+ * wallet account in chunks, replays the ledger entries after its snapshot, and moves the snapshot
+ * forward only when the replay lands exactly on the account's balance and seq. It only reads the
+ * wallets and writes snapshots, so payments keep running while it does.
+ */
+@Service
+public class WalletSnapshotService {
+
+    // Differences below this are float noise from repeated $inc, not drift
+    private static final double TOLERANCE = 0.005;
+
+    private static final int MAX_REPORTED_DRIFTS = 100;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${app.wallet.snapshot-chunk-size:500}")
+    private int chunkSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private record AccountState(Long accountId, double balance, long seq) {}
+
+    /**
+     * Snapshot balance plus the ledger entries after it up to the account's walletSeq. Falls back
+     * to the account's walletBalance when there is no snapshot, the verifier flagged it, or the
+     * ledger is missing entries in that range (a legacy gap, or an entry still being written).
+     * Null if the account does not exist.
+     */
+    public Double currentBalance(WalletLedgerEntry.AccountType accountType, Long accountId) {
+        AccountState account = account(accountType, accountId);
+        if (account == null) return null;
+
+        WalletBalanceSnapshot snapshot = mongoTemplate.findById(snapshotId(accountType, accountId), WalletBalanceSnapshot.class);
+        if (snapshot == null || snapshot.isDrifted() || snapshot.getLastSeq() > account.seq()) {
+            return account.balance();
+        }
+
+        // Bounded by walletSeq, so PENDING entries not yet applied to the account are left out
+        Document tail = mongoTemplate.aggregate(Aggregation.newAggregation(
+                Aggregation.match(accountCriteria(accountType, accountId)
+                    .and("seq").gt(snapshot.getLastSeq()).lte(account.seq())),
+                Aggregation.group().sum("delta").as("total").count().as("entries")),
+            WalletLedgerEntry.class, Document.class).getUniqueMappedResult();
+        long entries = tail != null ? ((Number) tail.get("entries")).longValue() : 0L;
+        if (entries != account.seq() - snapshot.getLastSeq()) {
+            return account.balance();
+        }
+        double sinceSnapshot = tail != null ? ((Number) tail.get("total")).doubleValue() : 0.0;
+        return snapshot.getBalance() + sinceSnapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${app.wallet.snapshot-interval-ms:900000}", initialDelayString = "${app.wallet.snapshot-interval-ms:900000}")
+    public void scheduledSnapshot() {
+        try {
+            snapshotAndVerify();
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage() + ", skipping scheduled pass.");
+        } catch (Exception e) {
+            System.err.println("Wallet snapshot pass failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One pass over every rider and driver wallet that has ledger entries. Accounts without a
+     * snapshot are seeded from their current balance; the rest are replayed from their snapshot.
+     * Snapshots whose account no longer has a walletSeq at all are reported as drift too.
+     */
+    public Map<String, Object> snapshotAndVerify() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Wallet snapshot pass already running");
+        }
+        try {
+            Map<String, Object> result = new HashMap<>();
+            result.put("accountsChecked", 0L);
+            result.put("snapshotsSeeded", 0L);
+            result.put("snapshotsAdvanced", 0L);
+            result.put("entriesReplayed", 0L);
+            result.put("incomplete", 0L);
+            result.put("driftedAccounts", 0L);
+            result.put("drifted", new ArrayList<String>()); // first MAX_REPORTED_DRIFTS, with the reason
+
+            scanAccounts(WalletLedgerEntry.AccountType.RIDER, Rider.class, result);
+            scanAccounts(WalletLedgerEntry.AccountType.DRIVER, Driver.class, result);
+            scanSnapshots(result);
+
+            System.out.println("Wallet snapshot pass checked " + result.get("accountsChecked") + " accounts, replayed "
+                + result.get("entriesReplayed") + " ledger entries, found " + result.get("driftedAccounts") + " drifted.");
+            return result;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Streams the account collection and handles it chunkSize accounts at a time
+    private void scanAccounts(WalletLedgerEntry.AccountType accountType, Class<?> type, Map<String, Object> result) {
+        Query query = walletFields(Criteria.where("walletSeq").gt(0)).cursorBatchSize(chunkSize);
+
+        List<AccountState> chunk = new ArrayList<>(chunkSize);
+        try (Stream<?> stream = mongoTemplate.stream(query, type)) {
+            Iterator<?> accounts = stream.iterator();
+            while (accounts.hasNext()) {
+                AccountState account = stateOf(accounts.next());
+                if (account == null) continue;
+                chunk.add(account);
+                if (chunk.size() == chunkSize) {
+                    processChunk(accountType, chunk, result);
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            processChunk(accountType, chunk, result);
+        }
+    }
+
+    /**
+     * The account scan only sees wallets with walletSeq > 0, so an account whose walletSeq was
+     * reset or removed would silently drop out of it. Walks the snapshots instead and reports every
+     * one whose account is gone or back at seq 0.
+     */
+    private void scanSnapshots(Map<String, Object> result) {
+        Query query = new Query(Criteria.where("lastSeq").gt(0)).cursorBatchSize(chunkSize);
+
+        List<WalletBalanceSnapshot> chunk = new ArrayList<>(chunkSize);
+        try (Stream<WalletBalanceSnapshot> stream = mongoTemplate.stream(query, WalletBalanceSnapshot.class)) {
+            Iterator<WalletBalanceSnapshot> snapshots = stream.iterator();
+            while (snapshots.hasNext()) {
+                chunk.add(snapshots.next());
+                if (chunk.size() == chunkSize) {
+                    checkSnapshotChunk(chunk, result);
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            checkSnapshotChunk(chunk, result);
+        }
+    }
+
+    private void checkSnapshotChunk(List<WalletBalanceSnapshot> chunk, Map<String, Object> result) {
+        List<Object> riderIds = new ArrayList<>();
+        List<Object> driverIds = new ArrayList<>();
+        for (WalletBalanceSnapshot snapshot : chunk) {
+            if (snapshot.getAccountType() == WalletLedgerEntry.AccountType.DRIVER) {
+                driverIds.add(snapshot.getAccountId());
+            } else {
+                riderIds.add(String.valueOf(snapshot.getAccountId()));
+            }
+        }
+
+        // One query per account type for the accounts in the chunk that still carry a walletSeq
+        Set<String> live = new HashSet<>();
+        if (!riderIds.isEmpty()) {
+            for (Rider rider : mongoTemplate.find(withWalletSeq(riderIds), Rider.class)) {
+                live.add(snapshotId(WalletLedgerEntry.AccountType.RIDER, Long.valueOf(rider.getId())));
+            }
+        }
+        if (!driverIds.isEmpty()) {
+            for (Driver driver : mongoTemplate.find(withWalletSeq(driverIds), Driver.class)) {
+                live.add(snapshotId(WalletLedgerEntry.AccountType.DRIVER, driver.getId()));
+            }
+        }
+
+        for (WalletBalanceSnapshot snapshot : chunk) {
+            if (!live.contains(snapshot.getId())) {
+                drift(result, snapshot.getId(), "account has no walletSeq (reset or missing) but snapshot is at seq "
+                    + snapshot.getLastSeq() + " with balance " + snapshot.getBalance());
+            }
+        }
+    }
+
+    private static Query withWalletSeq(List<Object> ids) {
+        Query query = new Query(Criteria.where("id").in(ids).and("walletSeq").gt(0));
+        query.fields().include("id");
+        return query;
+    }
+
+    private void processChunk(WalletLedgerEntry.AccountType accountType, List<AccountState> chunk, Map<String, Object> result) {
+        // One query for the whole chunk's snapshots
+        List<String> ids = new ArrayList<>(chunk.size());
+        for (AccountState account : chunk) {
+            ids.add(snapshotId(accountType, account.accountId()));
+        }
+        Map<String, WalletBalanceSnapshot> snapshots = new HashMap<>();
+        for (WalletBalanceSnapshot snapshot : mongoTemplate.find(new Query(Criteria.where("id").in(ids)), WalletBalanceSnapshot.class)) {
+            snapshots.put(snapshot.getId(), snapshot);
+        }
+
+        for (AccountState account : chunk) {
+            add(result, "accountsChecked", 1);
+            String id = snapshotId(accountType, account.accountId());
+            WalletBalanceSnapshot snapshot = snapshots.get(id);
+
+            if (snapshot == null) {
+                saveSnapshot(accountType, account);
+                add(result, "snapshotsSeeded", 1);
+            } else if (snapshot.getLastSeq() == account.seq()) {
+                if (Math.abs(snapshot.getBalance() - account.balance()) >= TOLERANCE) {
+                    drift(result, id, "balance " + account.balance() + " but snapshot " + snapshot.getBalance() + " at seq " + account.seq());
+                } else if (snapshot.isDrifted()) {
+                    // Repaired since it was flagged
+                    saveSnapshot(accountType, account);
+                }
+            } else if (snapshot.getLastSeq() > account.seq()) {
+                drift(result, id, "seq " + account.seq() + " is behind snapshot seq " + snapshot.getLastSeq());
+            } else {
+                replay(accountType, account, snapshot, result);
+            }
+        }
+    }
+
+    /**
+     * Replays the entries in (snapshot.lastSeq, account.seq] in seq order. A missing seq in the
+     * middle or a total that does not match the balance is drift. Missing entries only at the end
+     * are most likely payments still being written, so the account is rechecked next pass.
+     */
+    private void replay(WalletLedgerEntry.AccountType accountType, AccountState account,
+                        WalletBalanceSnapshot snapshot, Map<String, Object> result) {
+        String id = snapshot.getId();
+        Query tail = new Query(accountCriteria(accountType, account.accountId())
+                .and("seq").gt(snapshot.getLastSeq()).lte(account.seq()))
+            .with(Sort.by(Sort.Direction.ASC, "seq"))
+            .cursorBatchSize(chunkSize);
+
+        double balance = snapshot.getBalance();
+        long expectedSeq = snapshot.getLastSeq() + 1;
+        try (Stream<WalletLedgerEntry> stream = mongoTemplate.stream(tail, WalletLedgerEntry.class)) {
+            Iterator<WalletLedgerEntry> entries = stream.iterator();
+            while (entries.hasNext()) {
+                WalletLedgerEntry entry = entries.next();
+                if (entry.getSeq() != expectedSeq) {
+                    drift(result, id, "ledger entries " + expectedSeq + " to " + (entry.getSeq() - 1) + " are missing");
+                    return;
+                }
+                balance += entry.getDelta();
+                expectedSeq++;
+                add(result, "entriesReplayed", 1);
+            }
+        }
+
+        if (expectedSeq <= account.seq()) {
+            add(result, "incomplete", 1);
+            return;
+        }
+        if (Math.abs(balance - account.balance()) >= TOLERANCE) {
+            drift(result, id, "balance " + account.balance() + " but ledger replays to " + balance + " at seq " + account.seq());
+            return;
+        }
+        saveSnapshot(accountType, account);
+        add(result, "snapshotsAdvanced", 1);
+    }
+
+    private void saveSnapshot(WalletLedgerEntry.AccountType accountType, AccountState account) {
+        mongoTemplate.save(new WalletBalanceSnapshot(snapshotId(accountType, account.accountId()), accountType,
+            account.accountId(), account.balance(), account.seq(), LocalDateTime.now(), false));
+    }
+
+    private AccountState account(WalletLedgerEntry.AccountType accountType, Long accountId) {
+        if (accountType == WalletLedgerEntry.AccountType.DRIVER) {
+            return stateOf(mongoTemplate.findOne(walletFields(Criteria.where("id").is(accountId)), Driver.class));
+        }
+        return stateOf(mongoTemplate.findOne(walletFields(Criteria.where("id").is(String.valueOf(accountId))), Rider.class));
+    }
+
+    private static Query walletFields(Criteria criteria) {
+        Query query = new Query(criteria);
+        query.fields().include("walletBalance").include("walletSeq");
+        return query;
+    }
+
+    // Rider ids are Strings; only numeric ones can hold a wallet
+    private static AccountState stateOf(Object document) {
+        if (document == null) return null;
+        if (document instanceof Driver driver) {
+            return new AccountState(driver.getId(), valueOf(driver.getWalletBalance()), valueOf(driver.getWalletSeq()));
+        }
+        Rider rider = (Rider) document;
+        try {
+            return new AccountState(Long.valueOf(rider.getId()), valueOf(rider.getWalletBalance()), valueOf(rider.getWalletSeq()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Also flags the snapshot, so balance reads stop trusting it until a pass checks out
+    @SuppressWarnings("unchecked")
+    private void drift(Map<String, Object> result, String account, String reason) {
+        System.err.println("Wallet drift on " + account + ": " + reason);
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(account)), new Update().set("drifted", true),
+            WalletBalanceSnapshot.class);
+        add(result, "driftedAccounts", 1);
+        List<String> drifted = (List<String>) result.get("drifted");
+        if (drifted.size() < MAX_REPORTED_DRIFTS) {
+            drifted.add(account + ": " + reason);
+        }
+    }
+
+    private static void add(Map<String, Object> result, String key, long amount) {
+        result.put(key, (Long) result.get(key) + amount);
+    }
+
+    private static double valueOf(Double value) {
+        return value != null ? value : 0.0;
+    }
+
+    private static long valueOf(Long value) {
+        return value != null ? value : 0L;
+    }
+
+    private static Criteria accountCriteria(WalletLedgerEntry.AccountType accountType, Long accountId) {
+        return Criteria.where("accountType").is(accountType).and("accountId").is(accountId);
+    }
+
+    private static String snapshotId(WalletLedgerEntry.AccountType accountType, Long accountId) {
+        return accountType + ":" + accountId;
+    }
+}
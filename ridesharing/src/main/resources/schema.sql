@@ -150,9 +150,25 @@ CREATE TABLE IF NOT EXISTS notifications (
     INDEX idx_user_id (user_id),
     INDEX idx_is_read (is_read),
     INDEX idx_created_at (created_at),
+    INDEX idx_user_created (user_id, created_at DESC, id DESC),
     FOREIGN KEY (related_ride_id) REFERENCES rides(id) ON DELETE SET NULL
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
+-- Notifications Archive (rows past the retention age, moved out of the hot table)
+CREATE TABLE IF NOT EXISTS notifications_archive (
+    id BIGINT PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    title VARCHAR(255) NOT NULL,
+    message VARCHAR(500),
+    type VARCHAR(50),
+    related_ride_id BIGINT,
+    is_read BOOLEAN,
+    created_at TIMESTAMP NULL,
+    read_at TIMESTAMP NULL,
+    archived_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_user_created (user_id, created_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 ROW_FORMAT=COMPRESSED;
+
 -- Saved Places Table
 CREATE TABLE IF NOT EXISTS saved_places (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
@@ -0,0 +1,237 @@
+package com.takeme.service;
+
+import com.takeme.exception.RideAlreadyTakenException;
+import com.takeme.model.Driver;
+import com.takeme.model.Ride;
+import com.takeme.repository.DriverRepository;
+import com.takeme.repository.RideRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RideServiceAcceptRideTest {
+
+    private static final int RIDES = 200;
+    private static final int DRIVERS_PER_RIDE = 32;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private DriverRepository driverRepository;
+
+    @Mock
+    private RideRepository rideRepository;
+
+    @Mock
+    private NotificationService notificationService;
+
+    @Mock
+    private RideNotificationService rideNotificationService;
+
+    @Mock
+    private DriverLocationService driverLocationService;
+
+    @Mock
+    private SurgePricingService surgePricingService;
+
+    @Mock
+    private PlatformMetricsRegistry platformMetrics;
+
+    @InjectMocks
+    private RideService rideService;
+
+    @Test
+    void acceptClaimsTheRideWithAStatusGuardedUpdate() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Ride.class)))
+            .thenAnswer(invocation -> {
+                Ride ride = requestedRide(7L);
+                ride.setStatus(Ride.RideStatus.ACCEPTED);
+                ride.setDriverId(3L);
+                return ride;
+            });
+        when(driverRepository.findById(any())).thenAnswer(invocation -> Optional.of(driver(invocation.getArgument(0))));
+
+        rideService.acceptRide(7L, 3L);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), options.capture(), eq(Ride.class));
+
+        // Only a ride that is still REQUESTED may match, so a second accept finds nothing to claim
+        assertEquals(new Document("id", 7L).append("status", Ride.RideStatus.REQUESTED), query.getValue().getQueryObject());
+        Document set = (Document) update.getValue().getUpdateObject().get("$set");
+        assertEquals(Ride.RideStatus.ACCEPTED, set.get("status"));
+        assertEquals(3L, set.get("driverId"));
+        assertNotNull(set.get("acceptedAt"));
+        assertTrue(options.getValue().isReturnNew());
+    }
+
+    @Test
+    void exactlyOneDriverWinsEachContestedRide() throws Exception {
+        Map<Long, Document> rides = new ConcurrentHashMap<>();
+        for (long id = 1; id <= RIDES; id++) {
+            rides.put(id, new Document("id", id).append("riderId", 1000L + id).append("status", Ride.RideStatus.REQUESTED));
+        }
+
+        // Nothing about rides is assumed by the stand-in, so without the status guard in the query every driver would win
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Ride.class)))
+            .thenAnswer(invocation -> {
+                Query query = invocation.getArgument(0);
+                return findAndModify(rides.get((Long) query.getQueryObject().get("id")), query, invocation.getArgument(1));
+            });
+        lenient().when(mongoTemplate.exists(any(Query.class), eq(Ride.class))).thenReturn(true);
+        when(driverRepository.findById(any())).thenAnswer(invocation -> Optional.of(driver(invocation.getArgument(0))));
+
+        ExecutorService pool = Executors.newFixedThreadPool(DRIVERS_PER_RIDE);
+        AtomicInteger winners = new AtomicInteger();
+        AtomicInteger losers = new AtomicInteger();
+
+        long started = System.nanoTime();
+        try {
+            for (long rideId = 1; rideId <= RIDES; rideId++) {
+                final long contested = rideId;
+                CountDownLatch go = new CountDownLatch(1);
+                List<Future<?>> attempts = new ArrayList<>();
+                for (long driverId = 1; driverId <= DRIVERS_PER_RIDE; driverId++) {
+                    final long driver = driverId;
+                    attempts.add(pool.submit(() -> {
+                        go.await();
+                        try {
+                            rideService.acceptRide(contested, driver);
+                            winners.incrementAndGet();
+                        } catch (RideAlreadyTakenException e) {
+                            losers.incrementAndGet();
+                        }
+                        return null;
+                    }));
+                }
+                go.countDown();
+                for (Future<?> attempt : attempts) {
+                    attempt.get();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        long elapsedNanos = System.nanoTime() - started;
+
+        int attempts = RIDES * DRIVERS_PER_RIDE;
+        System.out.printf("acceptRide: %d contested attempts in %.1f ms (%.0f accepts/s, %d winners)%n",
+            attempts, elapsedNanos / 1e6, attempts / (elapsedNanos / 1e9), winners.get());
+
+        assertEquals(RIDES, winners.get());
+        assertEquals(RIDES * (DRIVERS_PER_RIDE - 1), losers.get());
+        rides.values().forEach(ride -> {
+            assertEquals(Ride.RideStatus.ACCEPTED, ride.get("status"));
+            assertNotNull(ride.get("driverId"));
+        });
+
+        // Losing drivers never reach the driver lookup
+        verify(driverRepository, times(RIDES)).findById(any());
+    }
+
+    @Test
+    void cancelThatLosesToAnAcceptCancelsTheAcceptedRideAndFreesItsDriver() {
+        Document stored = new Document("id", 7L).append("riderId", 1007L).append("status", Ride.RideStatus.REQUESTED);
+
+        // The rider's first read still sees REQUESTED; driver 3's accept lands before the cancel writes
+        when(rideRepository.findById(7L)).thenAnswer(invocation -> {
+            Ride seen = toRide(stored);
+            if (stored.get("status") == Ride.RideStatus.REQUESTED) {
+                stored.append("status", Ride.RideStatus.ACCEPTED).append("driverId", 3L);
+            }
+            return Optional.of(seen);
+        });
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Ride.class)))
+            .thenAnswer(invocation -> findAndModify(stored, invocation.getArgument(0), invocation.getArgument(1)));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Driver.class)))
+            .thenAnswer(invocation -> driver(3L));
+
+        Ride cancelled = rideService.cancelRide(7L, 1007L, "changed plans");
+
+        assertEquals(Ride.RideStatus.CANCELLED, cancelled.getStatus());
+        assertEquals(Ride.RideStatus.CANCELLED, stored.get("status"));
+        assertEquals("Rider", stored.get("cancelledBy"));
+        assertEquals(3L, stored.get("driverId"));
+
+        // The driver who had claimed it goes back to AVAILABLE, but only from BUSY
+        ArgumentCaptor<Query> release = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(release.capture(), any(Update.class), any(FindAndModifyOptions.class), eq(Driver.class));
+        assertEquals(new Document("id", 3L).append("status", Driver.DriverStatus.BUSY), release.getValue().getQueryObject());
+        verify(driverLocationService).syncDriver(any(Driver.class));
+    }
+
+    // Mongo's findAndModify semantics: match the query the service built against the document, then apply
+    // its $set, as one step per document
+    private static Ride findAndModify(Document ride, Query query, Update update) {
+        Document set = (Document) update.getUpdateObject().get("$set");
+        synchronized (ride) {
+            for (Map.Entry<String, Object> condition : query.getQueryObject().entrySet()) {
+                if (!condition.getValue().equals(ride.get(condition.getKey()))) {
+                    return null;
+                }
+            }
+            ride.putAll(set);
+            return toRide(ride);
+        }
+    }
+
+    private static Ride toRide(Document document) {
+        Ride ride = requestedRide((Long) document.get("id"));
+        ride.setRiderId((Long) document.get("riderId"));
+        ride.setStatus((Ride.RideStatus) document.get("status"));
+        ride.setDriverId((Long) document.get("driverId"));
+        return ride;
+    }
+
+    private static Ride requestedRide(Long id) {
+        Ride ride = new Ride();
+        ride.setId(id);
+        ride.setRiderId(1000L + id);
+        ride.setPickupAddress("Pickup " + id);
+        ride.setDropoffAddress("Dropoff " + id);
+        ride.setStatus(Ride.RideStatus.REQUESTED);
+        return ride;
+    }
+
+    private static Driver driver(Object id) {
+        Driver driver = new Driver();
+        driver.setId((Long) id);
+        driver.setName("Driver " + id);
+        driver.setVehicleNumber("KA-" + id);
+        driver.setStatus(Driver.DriverStatus.AVAILABLE);
+        return driver;
+    }
+}
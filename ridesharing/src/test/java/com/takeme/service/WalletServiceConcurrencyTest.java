@@ -0,0 +1,404 @@
+package com.takeme.service;
+
+import com.takeme.model.Driver;
+import com.takeme.model.Rider;
+import com.takeme.model.Transaction;
+import com.takeme.model.WalletLedgerEntry;
+import com.takeme.repository.DriverRepository;
+import com.takeme.repository.RiderRepository;
+import com.takeme.repository.TransactionRepository;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WalletServiceConcurrencyTest {
+
+    private static final long RIDER_ID = 1L;
+    private static final long DRIVER_ID = 2L;
+    private static final int THREADS = 32;
+    private static final int OPS_PER_THREAD = 250;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private RiderRepository riderRepository;
+
+    @Mock
+    private DriverRepository driverRepository;
+
+    @Mock
+    private NotificationService notificationService;
+
+    @Mock
+    private PlatformMetricsRegistry platformMetrics;
+
+    @Mock
+    private WalletSnapshotService walletSnapshotService;
+
+    @Mock
+    private DriverLocationService driverLocationService;
+
+    @InjectMocks
+    private WalletService walletService;
+
+    @InjectMocks
+    private DriverService driverService;
+
+    private final Account account = new Account();
+    // seq -> entry, the unique account/seq index of a single account's ledger
+    private final Map<Long, WalletLedgerEntry> ledger = new ConcurrentHashMap<>();
+    private final AtomicLong entryIds = new AtomicLong();
+
+    @BeforeEach
+    void stubMongo() {
+        lenient().when(mongoTemplate.findOne(any(Query.class), eq(Rider.class))).thenAnswer(invocation -> {
+            synchronized (account) {
+                return rider();
+            }
+        });
+        // Stand-in for Mongo's findAndModify: the seq and balance guards and both $inc fields are one atomic step per document
+        lenient().when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Rider.class)))
+            .thenAnswer(invocation -> {
+                Query query = invocation.getArgument(0);
+                Update update = invocation.getArgument(1);
+                Document seqGuard = (Document) query.getQueryObject().get("walletSeq");
+                Document balanceGuard = (Document) query.getQueryObject().get("walletBalance");
+                Document inc = (Document) update.getUpdateObject().get("$inc");
+                synchronized (account) {
+                    if (seqGuard != null && !((List<?>) seqGuard.get("$in")).contains(account.seq)) {
+                        return null;
+                    }
+                    if (balanceGuard != null && account.balance < ((Number) balanceGuard.get("$gte")).doubleValue()) {
+                        return null;
+                    }
+                    account.balance += ((Number) inc.get("walletBalance")).doubleValue();
+                    account.seq += ((Number) inc.get("walletSeq")).longValue();
+                    return rider();
+                }
+            });
+        lenient().when(mongoTemplate.insert(any(WalletLedgerEntry.class))).thenAnswer(invocation -> {
+            WalletLedgerEntry entry = invocation.getArgument(0);
+            entry.setId(String.valueOf(entryIds.incrementAndGet()));
+            if (ledger.putIfAbsent(entry.getSeq(), entry) != null) {
+                throw new DuplicateKeyException("account_seq " + entry.getSeq());
+            }
+            return entry;
+        });
+        lenient().when(mongoTemplate.findOne(any(Query.class), eq(WalletLedgerEntry.class))).thenAnswer(invocation -> {
+            Query query = invocation.getArgument(0);
+            return ledger.get(((Number) query.getQueryObject().get("seq")).longValue());
+        });
+        lenient().when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(WalletLedgerEntry.class))).thenAnswer(invocation -> {
+            WalletLedgerEntry entry = entryWithId(invocation.getArgument(0));
+            if (entry == null) {
+                return UpdateResult.acknowledged(0, 0L, null);
+            }
+            Document set = (Document) ((Update) invocation.getArgument(1)).getUpdateObject().get("$set");
+            entry.setStatus((WalletLedgerEntry.Status) set.get("status"));
+            return UpdateResult.acknowledged(1, 1L, null);
+        });
+        lenient().when(mongoTemplate.remove(any(Query.class), eq(WalletLedgerEntry.class))).thenAnswer(invocation -> {
+            WalletLedgerEntry entry = entryWithId(invocation.getArgument(0));
+            boolean removed = entry != null && entry.getStatus() == WalletLedgerEntry.Status.PENDING
+                && ledger.remove(entry.getSeq(), entry);
+            return DeleteResult.acknowledged(removed ? 1 : 0);
+        });
+        lenient().when(mongoTemplate.exists(any(Query.class), eq(Rider.class))).thenReturn(true);
+        lenient().when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void concurrentRechargesAndPaymentsNeitherLoseUpdatesNorOverdraw() throws Exception {
+        AtomicInteger recharges = new AtomicInteger();
+        AtomicInteger payments = new AtomicInteger();
+        AtomicInteger declined = new AtomicInteger();
+
+        runConcurrently(THREADS, thread -> {
+            for (int i = 0; i < OPS_PER_THREAD; i++) {
+                if (thread % 2 == 0) {
+                    walletService.rechargeWallet(RIDER_ID, 10.0, "UPI", "User");
+                    recharges.incrementAndGet();
+                } else {
+                    try {
+                        walletService.processRidePayment(RIDER_ID, (long) i, 7.0, "WALLET");
+                        payments.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        assertEquals("Insufficient wallet balance", e.getMessage());
+                        declined.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        assertEquals(THREADS * OPS_PER_THREAD, recharges.get() + payments.get() + declined.get());
+        assertEquals(recharges.get() * 10.0 - payments.get() * 7.0, account.balance, 1e-9);
+        assertEquals(recharges.get() + payments.get(), account.seq);
+        assertLedgerReplaysTo(account.balance, account.seq);
+    }
+
+    @Test
+    void debitsRacingForTheLastFundsStopExactlyAtZero() throws Exception {
+        account.balance = 700.0;
+        AtomicInteger payments = new AtomicInteger();
+        AtomicInteger declined = new AtomicInteger();
+
+        runConcurrently(THREADS, thread -> {
+            for (int i = 0; i < 20; i++) {
+                try {
+                    walletService.processRidePayment(RIDER_ID, (long) i, 7.0, "WALLET");
+                    payments.incrementAndGet();
+                } catch (RuntimeException e) {
+                    declined.incrementAndGet();
+                }
+            }
+        });
+
+        assertEquals(100, payments.get());
+        assertEquals(THREADS * 20 - 100, declined.get());
+        assertEquals(0.0, account.balance, 1e-9);
+        assertEquals(100, ledger.size());
+        assertLedgerReplaysTo(-700.0, 100);
+    }
+
+    @Test
+    void paymentClaimsItsLedgerSeqThenIsOneGuardedIncrementOfBalanceAndSeq() {
+        account.balance = 50.0;
+
+        walletService.processRidePayment(RIDER_ID, 9L, 7.0, "WALLET");
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), options.capture(), eq(Rider.class));
+
+        // Rider ids are strings; the debit only matches at the seq its entry was claimed for and while the balance covers it
+        assertEquals(new Document("id", String.valueOf(RIDER_ID))
+                .append("walletSeq", new Document("$in", Arrays.asList(0L, null)))
+                .append("walletBalance", new Document("$gte", 7.0)),
+            query.getValue().getQueryObject());
+
+        Document updateObject = update.getValue().getUpdateObject();
+        assertEquals(1, updateObject.size(), "only $inc, nothing read-modify-written");
+        Document inc = (Document) updateObject.get("$inc");
+        assertEquals(2, inc.size());
+        assertEquals(-7.0, ((Number) inc.get("walletBalance")).doubleValue(), 1e-9);
+        assertEquals(1L, ((Number) inc.get("walletSeq")).longValue());
+        assertTrue(options.getValue().isReturnNew());
+
+        assertEquals(43.0, account.balance, 1e-9);
+        WalletLedgerEntry entry = ledger.get(1L);
+        assertEquals(1, ledger.size());
+        assertEquals(-7.0, entry.getDelta(), 1e-9);
+        assertEquals(43.0, entry.getBalanceAfter(), 1e-9);
+        assertEquals(WalletLedgerEntry.Status.APPLIED, entry.getStatus());
+    }
+
+    @Test
+    void pendingEntryLeftOnTheNextSeqIsFinishedBeforeTheNextPayment() {
+        account.balance = 50.0;
+        // A recharge that crashed after claiming seq 1 but before touching the account
+        ledger.put(1L, new WalletLedgerEntry("crashed", WalletLedgerEntry.AccountType.RIDER, RIDER_ID, 1L, 20.0, 70.0,
+            WalletLedgerEntry.EntryType.RECHARGE, "TXNCRASHED", null, WalletLedgerEntry.Status.PENDING));
+
+        walletService.processRidePayment(RIDER_ID, 9L, 7.0, "WALLET");
+
+        assertEquals(63.0, account.balance, 1e-9);
+        assertEquals(2L, account.seq);
+        assertEquals(WalletLedgerEntry.Status.APPLIED, ledger.get(1L).getStatus());
+        assertEquals(WalletLedgerEntry.Status.APPLIED, ledger.get(2L).getStatus());
+        assertLedgerReplaysTo(13.0, 2);
+    }
+
+    @Test
+    void ledgerInsertFailureLeavesTheBalanceAndRecordsNoTransaction() {
+        account.balance = 50.0;
+        doThrow(new DataAccessResourceFailureException("timeout")).when(mongoTemplate).insert(any(WalletLedgerEntry.class));
+
+        assertThrows(DataAccessResourceFailureException.class,
+            () -> walletService.rechargeWallet(RIDER_ID, 10.0, "UPI", "User"));
+
+        assertEquals(50.0, account.balance, 1e-9);
+        assertEquals(0L, account.seq);
+        verify(transactionRepository, never()).save(any(Transaction.class));
+    }
+
+    @Test
+    void statusChangeFromACopyReadBeforeAPaymentKeepsThePayment() {
+        Document stored = new Document("_id", DRIVER_ID)
+            .append("status", Driver.DriverStatus.OFFLINE)
+            .append("walletBalance", 0.0)
+            .append("walletSeq", 0L);
+
+        // Read before the recharge below, so this copy still shows the old balance
+        Driver stale = new Driver();
+        stale.setId(DRIVER_ID);
+        stale.setStatus(Driver.DriverStatus.OFFLINE);
+        stale.setWalletBalance(0.0);
+        stale.setWalletSeq(0L);
+        when(driverRepository.findById(DRIVER_ID)).thenReturn(Optional.of(stale));
+
+        when(mongoTemplate.findOne(any(Query.class), eq(Driver.class))).thenAnswer(invocation -> {
+            Driver driver = new Driver();
+            driver.setId(DRIVER_ID);
+            driver.setWalletBalance(stored.getDouble("walletBalance"));
+            driver.setWalletSeq(stored.getLong("walletSeq"));
+            return driver;
+        });
+
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Driver.class)))
+            .thenAnswer(invocation -> {
+                apply(stored, invocation.getArgument(1));
+                Driver driver = new Driver();
+                driver.setId(DRIVER_ID);
+                driver.setWalletBalance(stored.getDouble("walletBalance"));
+                driver.setWalletSeq(stored.getLong("walletSeq"));
+                return driver;
+            });
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Driver.class)))
+            .thenAnswer(invocation -> {
+                apply(stored, invocation.getArgument(1));
+                return UpdateResult.acknowledged(1, 1L, null);
+            });
+
+        walletService.rechargeWallet(DRIVER_ID, 30.0, "UPI", "Driver");
+        driverService.updateDriverStatus(DRIVER_ID, "available");
+
+        ArgumentCaptor<Update> statusUpdate = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), statusUpdate.capture(), eq(Driver.class));
+        assertEquals(new Document("$set", new Document("status", Driver.DriverStatus.AVAILABLE)),
+            statusUpdate.getValue().getUpdateObject());
+        verify(driverRepository, never()).save(any(Driver.class));
+
+        assertEquals(Driver.DriverStatus.AVAILABLE, stored.get("status"));
+        assertEquals(30.0, stored.getDouble("walletBalance"), 1e-9);
+        assertEquals(1L, stored.getLong("walletSeq"));
+    }
+
+    // Mongo's $inc and $set against an in-memory document
+    private static void apply(Document stored, Update update) {
+        Document updateObject = update.getUpdateObject();
+        Document inc = (Document) updateObject.get("$inc");
+        if (inc != null) {
+            for (Map.Entry<String, Object> field : inc.entrySet()) {
+                Number current = (Number) stored.get(field.getKey());
+                Number delta = (Number) field.getValue();
+                if (current instanceof Double || delta instanceof Double) {
+                    stored.put(field.getKey(), current.doubleValue() + delta.doubleValue());
+                } else {
+                    stored.put(field.getKey(), current.longValue() + delta.longValue());
+                }
+            }
+        }
+        Document set = (Document) updateObject.get("$set");
+        if (set != null) {
+            stored.putAll(set);
+        }
+    }
+
+    private Rider rider() {
+        Rider rider = new Rider();
+        rider.setId(String.valueOf(RIDER_ID));
+        rider.setWalletBalance(account.balance);
+        rider.setWalletSeq(account.seq);
+        return rider;
+    }
+
+    private WalletLedgerEntry entryWithId(Query query) {
+        Object id = query.getQueryObject().get("id");
+        return ledger.values().stream().filter(entry -> entry.getId().equals(id)).findFirst().orElse(null);
+    }
+
+    // Seqs run 1..n without gaps, every entry is applied, and summing deltas in seq order moves the
+    // balance by the given change and reproduces every balanceAfter
+    private void assertLedgerReplaysTo(double change, long lastSeq) {
+        List<WalletLedgerEntry> entries = new ArrayList<>(ledger.values());
+        entries.sort(Comparator.comparingLong(WalletLedgerEntry::getSeq));
+        assertEquals(lastSeq, entries.size());
+
+        double start = entries.isEmpty() ? 0.0 : entries.get(0).getBalanceAfter() - entries.get(0).getDelta();
+        double replayed = start;
+        for (int i = 0; i < entries.size(); i++) {
+            WalletLedgerEntry entry = entries.get(i);
+            assertEquals(i + 1, entry.getSeq());
+            assertEquals(WalletLedgerEntry.Status.APPLIED, entry.getStatus());
+            replayed += entry.getDelta();
+            assertEquals(replayed, entry.getBalanceAfter(), 1e-9);
+            assertTrue(entry.getBalanceAfter() >= 0, "balance went negative at seq " + entry.getSeq());
+        }
+        assertEquals(change, replayed - start, 1e-9);
+    }
+
+    private static void runConcurrently(int threads, ThreadBody body) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                workers.add(pool.submit(() -> {
+                    go.await();
+                    body.run(thread);
+                    return null;
+                }));
+            }
+            go.countDown();
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private interface ThreadBody {
+        void run(int thread);
+    }
+
+    private static final class Account {
+        double balance;
+        long seq;
+    }
+}